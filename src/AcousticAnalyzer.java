@@ -18,6 +18,17 @@ public class AcousticAnalyzer {
             59, 64, 69, 74, 80, 86, 93, 100, 108, 116, 125, 134, 146, 157, 171,
             185, 186 };
 
+    // position of a weak bit that is not present
+    public static final int NO_WEAK_BIT = 0xFF;
+
+    // range of the bins of the frequency domain data read by
+    // updateFingerprintUsingAverageDeltaPowerDiff, the last one exclusive
+    public static final int FIRST_ANALYZED_BIN = 12;
+    public static final int LAST_ANALYZED_BIN = 126;
+    // range of the bins read by updateFingerprintUsingMaxPeak
+    public static final int FIRST_MAX_PEAK_BIN = 2;
+    public static final int LAST_MAX_PEAK_BIN = 122;
+
     /**
      * 
      * This method computes a sub-fingerprint for the given segment of
@@ -38,9 +49,10 @@ public class AcousticAnalyzer {
      * @param fingerprint - the hash map of the main sequence processed so far
      *            into which the new fingerprint computed will be stored
      * 
+     * @return - the sub-fingerprint computed for the given audio segment
      * 
      */
-    public static void updateFingerprintUsingMaxPeak(
+    public static int updateFingerprintUsingMaxPeak(
             double[] audioSegment,
             int sttime,
             Map<Integer, List<Integer>> fingerprint) {
@@ -82,15 +94,8 @@ public class AcousticAnalyzer {
             }
         }
         hash = bitwiseHash(fmax[0], fmax[1], fmax[2], fmax[3]);
-        List<Integer> times = fingerprint.get(hash);
-        if (times == null) {
-            times = new ArrayList<Integer>();
-            times.add(sttime);
-            fingerprint.put(hash, times);
-        } else {
-            times.add(sttime);
-        }
-        sttime++;
+        addToFingerprint(fingerprint, hash, sttime);
+        return hash;
     }
 
     /**
@@ -111,20 +116,78 @@ public class AcousticAnalyzer {
      * @param fingerprint - hash map of the main sequence processed so far into
      *            which the new fingerprint computed will be stored
      * 
+     * @return - the sub-fingerprint computed for the given audio segment
      * 
      */
-    public static void updateFingerprintUsingAverageDeltaPowerDiff(
+    public static int updateFingerprintUsingAverageDeltaPowerDiff(
             double[] audioSegment,
             int sttime,
             Map<Integer, List<Integer>> fingerprint) {
+        return updateFingerprintUsingAverageDeltaPowerDiff(audioSegment,
+                sttime, fingerprint, null);
+    }
+
+    /**
+     * This method computes a sub-fingerprint in the same way as
+     * {@link #updateFingerprintUsingAverageDeltaPowerDiff(double[], int, Map)}
+     * and in addition identifies the two least reliable bits of the
+     * sub-fingerprint, the ones computed from the pairs of sub-bands whose
+     * average powers differ the least
+     * 
+     * @param audioSegment - An array representing a segment of frequency
+     *            domain data for which the fingerprint has to be computed
+     * 
+     * @param sttime - A number representing the relative time of occurrence of
+     *            the given audio segment
+     * 
+     * @param fingerprint - hash map of the main sequence processed so far into
+     *            which the new fingerprint computed will be stored
+     * 
+     * @param weakBits - if not null, weakBits[0] is set to the positions of
+     *            the two least reliable bits as packed by
+     *            {@link #weakestBits(double[])}
+     * 
+     * @return - the sub-fingerprint computed for the given audio segment
+     * 
+     */
+    public static int updateFingerprintUsingAverageDeltaPowerDiff(
+            double[] audioSegment,
+            int sttime,
+            Map<Integer, List<Integer>> fingerprint,
+            int[] weakBits) {
+        int hash = averageDeltaPowerDiffHash(audioSegment, weakBits);
+        addToFingerprint(fingerprint, hash, sttime);
+        return hash;
+    }
+
+    /**
+     * This method computes the sub-fingerprint of the given segment of
+     * frequency domain data in the same way as
+     * {@link #updateFingerprintUsingAverageDeltaPowerDiff(double[], int, Map)}
+     * without storing it in a fingerprint
+     * 
+     * @param audioSegment - An array representing a segment of frequency
+     *            domain data for which the fingerprint has to be computed
+     * 
+     * @param weakBits - if not null, weakBits[0] is set to the positions of
+     *            the two least reliable bits as packed by
+     *            {@link #weakestBits(double[])}
+     * 
+     * @return - the sub-fingerprint computed for the given audio segment
+     * 
+     */
+    public static int averageDeltaPowerDiffHash(
+            double[] audioSegment,
+            int[] weakBits) {
         double absValue;
         int frameSize = audioSegment.length;
         int halfFrameSize = frameSize / 2;
         double[] bandPower = new double[33];
-        int hash = 0, range = BARK_SCALE[0], i = 0, maxrange = 126;
+        int hash = 0, range = BARK_SCALE[0], i = 0;
+        int maxrange = LAST_ANALYZED_BIN;
         int counter = 0;
         double fpow = 0;
-        for (int fband = 12; fband < maxrange;) {
+        for (int fband = FIRST_ANALYZED_BIN; fband < maxrange;) {
             if (fband < range) {
                 absValue =
                         Math.sqrt(Math.pow(audioSegment[fband], 2)
@@ -142,15 +205,91 @@ public class AcousticAnalyzer {
             }
         }
         hash = bitwiseHash(bandPower);
-        List<Integer> times = fingerprint.get(hash);
+        if (weakBits != null) {
+            weakBits[0] = weakestBits(bandPower);
+        }
+        return hash;
+    }
+
+    /**
+     * Stores the given key in the given hash map along with the given time
+     * component as the value (in a list). If the hash map already contains
+     * the key, adds the time component to the list of values for the key
+     * 
+     * @param fingerprint - the hash map into which the key is stored
+     * @param key - a hash computed for the audio
+     * @param sttime - relative time at which the key occurs
+     */
+    public static void addToFingerprint(
+            Map<Integer, List<Integer>> fingerprint,
+            int key,
+            int sttime) {
+        List<Integer> times = fingerprint.get(key);
         if (times == null) {
             times = new ArrayList<Integer>();
             times.add(sttime);
-            fingerprint.put(hash, times);
+            fingerprint.put(key, times);
         } else {
             times.add(sttime);
         }
-        sttime++;
+    }
+
+    /**
+     * Finds the two bits of the hash computed by {@link #bitwiseHash(double[])}
+     * for the given input that are the most likely to flip when the audio is
+     * degraded, which are the bits for which the relative difference between
+     * the consecutive elements is the smallest. Bits computed from elements
+     * that are both zero never flip and are not considered
+     * 
+     * @return - the position of the least reliable bit in the lowest 8 bits
+     *         and the position of the next least reliable bit in the next 8
+     *         bits, where a position is NO_WEAK_BIT if there is no such bit
+     */
+    public static int weakestBits(double[] input) {
+        int b1 = NO_WEAK_BIT, b2 = NO_WEAK_BIT;
+        double m1 = Double.MAX_VALUE, m2 = Double.MAX_VALUE;
+        for (int i = 1; i < input.length; i++) {
+            double sum = input[i - 1] + input[i];
+            if (sum == 0) {
+                continue;
+            }
+            double margin = Math.abs(input[i] - input[i - 1]) / sum;
+            if (margin < m1) {
+                m2 = m1;
+                b2 = b1;
+                m1 = margin;
+                b1 = i & 31;
+            } else if (margin < m2) {
+                m2 = margin;
+                b2 = i & 31;
+            }
+        }
+        return b1 | (b2 << 8);
+    }
+
+    /**
+     * Computes the hashes that differ from the given hash in its least
+     * reliable bits, the least reliable bit flipped, the next least reliable
+     * bit flipped and both of them flipped
+     * 
+     * @param hash - sub-fingerprint hash
+     * @param weakBits - positions of the least reliable bits of the hash, as
+     *            returned by {@link #weakestBits(double[])}
+     * @param probes - array of length 3 into which the hashes are stored
+     * @return - the number of hashes stored in probes
+     */
+    public static int probes(int hash, int weakBits, int[] probes) {
+        int b1 = weakBits & 0xFF, b2 = (weakBits >> 8) & 0xFF;
+        if (b1 == NO_WEAK_BIT) {
+            return 0;
+        }
+        probes[0] = hash ^ (1 << b1);
+        if (b2 == NO_WEAK_BIT) {
+            return 1;
+        }
+        probes[1] = hash ^ (1 << b2);
+        probes[2] = hash ^ (1 << b1) ^ (1 << b2);
+        return 3;
     }
 
     /**
@@ -1,3 +1,6 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
 /**
  * This class serves as the base class for all classes that represent specific
  * audio file types
@@ -33,6 +36,14 @@ public abstract class AudioFile {
     public static final String ERROR_READING_FILE =
             "ERROR: Error while reading the file %s";
 
+    // length of the segments read through getNext to serve read
+    private static final int READ_SEGMENT_LENGTH = 4096;
+
+    // segment read through getNext to serve read, and the position of its
+    // first sample not yet returned
+    private double[] readSegment;
+    private int readPosition;
+
     /**
      * To verify if the given input is of a format supported by the program
      * based on the file extension. If the file is of a valid format, returns
@@ -123,4 +134,96 @@ public abstract class AudioFile {
      */
     public abstract void close();
 
+    /**
+     * To read the next canonicalized samples of the audio file into the given
+     * buffer. This implementation reads the samples through getNext, one
+     * segment at a time, subclasses that can convert the samples straight
+     * into the buffer override it so that no memory is allocated while the
+     * file is read. The samples of a file are read either through this method
+     * or through getNext, never both
+     * 
+     * @param dst - buffer into which the samples are read
+     * @param off - index in the buffer of the first sample read
+     * @param len - the largest number of samples to be read
+     * @return - the number of samples read, which is less than len only at the
+     *         end of the audio, or -1 if there are no more samples
+     */
+    public int read(float[] dst, int off, int len) {
+        int n = 0;
+        while (n < len && fillReadSegment()) {
+            int count = Math.min(len - n, readSegment.length - readPosition);
+            for (int i = 0; i < count; i++) {
+                dst[off + n++] = (float) readSegment[readPosition++];
+            }
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    /**
+     * To read the next canonicalized samples of the audio file into the given
+     * buffer as 16 bit values, rounded and clamped to the range of a short
+     * 
+     * @see #read(float[], int, int)
+     */
+    public int read(short[] dst, int off, int len) {
+        int n = 0;
+        while (n < len && fillReadSegment()) {
+            int count = Math.min(len - n, readSegment.length - readPosition);
+            for (int i = 0; i < count; i++) {
+                dst[off + n++] = toShort(readSegment[readPosition++]);
+            }
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    /**
+     * Reads the next segment through getNext if all the samples of the
+     * current one have been returned
+     * 
+     * @return - true if there are samples left to be returned, false at the
+     *         end of the audio
+     */
+    private boolean fillReadSegment() {
+        while (readSegment == null || readPosition == readSegment.length) {
+            if (!hasNext()) {
+                return false;
+            }
+            readSegment = getNext(READ_SEGMENT_LENGTH);
+            readPosition = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Rounds the given canonicalized sample to the nearest 16 bit value
+     * 
+     * @param sample - canonicalized sample
+     * @return - the sample as a short
+     */
+    protected static short toShort(double sample) {
+        long val = Math.round(sample);
+        if (val > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (val < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) val;
+    }
+
+    /**
+     * To get a view of the audio file as a publisher of its canonicalized
+     * segments, read on the given executor as they are requested. The file
+     * must not be read directly once it is published
+     * 
+     * @param executor - executor on which the segments are read
+     * @param streamingLength - the length of the segments published
+     * @return - an {@AudioFilePublisher} of the segments of this file
+     */
+    public Flow.Publisher<double[]> publisher(
+            Executor executor,
+            int streamingLength) {
+        return new AudioFilePublisher(this, executor, streamingLength);
+    }
+
 }
@@ -0,0 +1,183 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class publishes the canonicalized segments of an {@AudioFile} to a
+ * single {@Flow.Subscriber}, as many as the subscriber has requested. The
+ * segments are read by tasks run on the given executor only while there is
+ * outstanding demand, so a subscriber that is slower than the reading holds
+ * back the reading instead of letting segments pile up in memory, and a
+ * thread of the executor is used only while segments are being read and
+ * delivered. A task delivers a bounded number of segments before giving up
+ * its thread, so that many files published on a small pool of threads make
+ * progress together.
+ *
+ * The file is closed once all its segments have been delivered, on an error,
+ * or when the subscription is cancelled.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class AudioFilePublisher implements Flow.Publisher<double[]> {
+
+    // number of segments delivered by a task before it gives up its thread
+    private static final int SEGMENTS_PER_TASK = 16;
+
+    private AudioFile audioFile;
+    private Executor executor;
+    private int segmentLength;
+    private AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param audioFile - {@AudioFile} whose segments are published
+     * @param executor - executor on which the segments are read and delivered
+     * @param segmentLength - the number of canonicalized samples of a segment
+     */
+    public AudioFilePublisher(
+            AudioFile audioFile,
+            Executor executor,
+            int segmentLength) {
+        this.audioFile = audioFile;
+        this.executor = executor;
+        this.segmentLength = segmentLength;
+    }
+
+    /**
+     * Subscribes the given subscriber to the segments of the file. A file can
+     * be read only once, so any later subscriber is signalled an error
+     */
+    public void subscribe(Flow.Subscriber<? super double[]> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                    "ERROR: The file " + audioFile.getShortName()
+                            + " has already been published"));
+            return;
+        }
+        subscriber.onSubscribe(new SegmentSubscription(subscriber));
+    }
+
+    /**
+     * The subscription of the subscriber, which reads and delivers the
+     * segments. At most one task delivering segments is scheduled at any
+     * time, so the subscriber is signalled serially
+     *
+     */
+    private class SegmentSubscription implements Flow.Subscription, Runnable {
+
+        private Flow.Subscriber<? super double[]> subscriber;
+        private AtomicLong demand = new AtomicLong();
+        // number of requests, cancellations and yields not yet seen by a
+        // task, a task is scheduled when it rises from zero
+        private AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        // accessed by the scheduled tasks only
+        private boolean done;
+
+        private SegmentSubscription(Flow.Subscriber<? super double[]> s) {
+            this.subscriber = s;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest =
+                        new IllegalArgumentException(
+                                "ERROR: The number of segments requested "
+                                        + "must be positive");
+            } else {
+                long d, next;
+                do {
+                    d = demand.get();
+                    next = d + n < 0 ? Long.MAX_VALUE : d + n;
+                } while (!demand.compareAndSet(d, next));
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Delivers segments while there is demand, till the end of the file
+         * or till SEGMENTS_PER_TASK of them have been delivered, in which case
+         * the task is scheduled again
+         */
+        public void run() {
+            int seen = pending.get();
+            int delivered = 0;
+            while (true) {
+                while (!done) {
+                    if (cancelled) {
+                        finish();
+                        break;
+                    }
+                    if (invalidRequest != null) {
+                        finish();
+                        subscriber.onError(invalidRequest);
+                        break;
+                    }
+                    double[] segment;
+                    try {
+                        if (!audioFile.hasNext()) {
+                            finish();
+                            subscriber.onComplete();
+                            break;
+                        }
+                        if (demand.get() == 0) {
+                            break;
+                        }
+                        if (delivered == SEGMENTS_PER_TASK) {
+                            // the pending count is left above zero, so no
+                            // other task is scheduled meanwhile
+                            executor.execute(this);
+                            return;
+                        }
+                        segment = audioFile.getNext(segmentLength);
+                    } catch (RuntimeException | Error e) {
+                        // an Error such as an OutOfMemoryError is signalled
+                        // as well, or the subscriber would wait forever
+                        try {
+                            finish();
+                        } finally {
+                            subscriber.onError(e);
+                        }
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    delivered++;
+                    subscriber.onNext(segment);
+                }
+                seen = pending.addAndGet(-seen);
+                if (seen == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void finish() {
+            done = true;
+            audioFile.close();
+        }
+    }
+
+}
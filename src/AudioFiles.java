@@ -43,6 +43,55 @@ public abstract class AudioFiles {
         return listOfFiles2;
     }
 
+    /**
+     * Lists the file(s) given by the given parameters, to be made into
+     * {@AudioFile} one at a time by {@link #makeAudioFileFromArg}
+     * 
+     * @param flag - indicates if the given fpath is a directory or a file,
+     *            '-f' -> file, '-d' -> directory
+     * @param fpath - file path including the file name, or a file directory
+     * @return - the path names of the file(s)
+     */
+    public static String[] listFilesFromArg(String flag, String fpath) {
+        if ("-f".equals(flag)) {
+            return new String[] { fpath };
+        }
+        return listDirectory(fpath);
+    }
+
+    /**
+     * Makes a single instance of {@AudioFile} for a file listed by
+     * {@link #listFilesFromArg}. If the file is of a directory and cannot be
+     * made into an {@AudioFile}, prints an error message and sets the exit
+     * status of the main program to -1, as
+     * {@link #makeAudioFilesFromArg} does
+     * 
+     * @param flag - the flag given with the file or its directory, '-f' ->
+     *            file, '-d' -> directory
+     * @param fileName - path name of the file
+     * @param paramNum - the sub-folder of the temporary path to which the
+     *            temporary file(s) if any must be written to
+     * @return - an {@AudioFile} for the file, or null if the file of a
+     *         directory cannot be read
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static AudioFile makeAudioFileFromArg(
+            String flag,
+            String fileName,
+            int paramNum) throws IOException, InterruptedException {
+        if ("-f".equals(flag)) {
+            return AudioFiles.makeAudioFileByExtension(fileName, paramNum);
+        }
+        try {
+            return AudioFiles.makeAudioFileByExtension(fileName, paramNum);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            dam.setErrorOccured();
+            return null;
+        }
+    }
+
     /**
      * Makes a single instance of {@AudioFile} based on the file
      * extension from the given file name. If the file extension is of a format
@@ -56,7 +105,7 @@ public abstract class AudioFiles {
      * @throws IOException
      * @throws InterruptedException
      */
-    private static AudioFile makeAudioFileByExtension(
+    static AudioFile makeAudioFileByExtension(
             String fileName,
             int paramNum) throws IOException, InterruptedException {
         AudioFile.FILE_TYPE ftype = AudioFile.getFileTypeFromName(fileName);
@@ -91,16 +140,7 @@ public abstract class AudioFiles {
     private static AudioFile[] makeAllAudioFilesInDirectory(
             String dirName,
             int paramNum) throws IOException, InterruptedException {
-        File fi = new File(dirName);
-        String[] fileNames;
-        if (fi.isDirectory()) {
-            fileNames = fi.list();
-        } else {
-            throw new RuntimeException(AudioFile.INVALID_PATH_COMMAND_LINE);
-        }
-        if (fileNames == null || fileNames.length == 0) {
-            throw new RuntimeException(AudioFile.NO_FILES_IN_DIRECTORY);
-        }
+        String[] fileNames = listDirectory(dirName);
         AudioFile[] audioFiles = new AudioFile[fileNames.length];
         int idx = 0;
         int errcount = 0;
@@ -110,9 +150,7 @@ public abstract class AudioFiles {
         for (String f : fileNames) {
             try {
                 audioFiles[idx++] =
-                        AudioFiles.makeAudioFileByExtension(
-                                fi.getAbsolutePath() + File.separator + f,
-                                paramNum);
+                        AudioFiles.makeAudioFileByExtension(f, paramNum);
             } catch (Exception e) {
                 idx--;
                 errcount++;
@@ -131,4 +169,29 @@ public abstract class AudioFiles {
         return audioFiles;
     }
 
+    /**
+     * Lists the files present in the given file directory, throwing a
+     * RuntimeException if it is not a directory or if it is empty
+     * 
+     * @param dirName - directory name
+     * @return - the absolute path names of the files of the directory
+     */
+    static String[] listDirectory(String dirName) {
+        File fi = new File(dirName);
+        String[] fileNames;
+        if (fi.isDirectory()) {
+            fileNames = fi.list();
+        } else {
+            throw new RuntimeException(AudioFile.INVALID_PATH_COMMAND_LINE);
+        }
+        if (fileNames == null || fileNames.length == 0) {
+            throw new RuntimeException(AudioFile.NO_FILES_IN_DIRECTORY);
+        }
+        for (int i = 0; i < fileNames.length; i++) {
+            fileNames[i] =
+                    fi.getAbsolutePath() + File.separator + fileNames[i];
+        }
+        return fileNames;
+    }
+
 }
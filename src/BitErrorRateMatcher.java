@@ -0,0 +1,214 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class contains static methods to find a matching segment between two
+ * {@ComparableAudioFile} by comparing the time ordered sub-fingerprints of
+ * their analysis frames bit by bit, as described in "A Highly Robust Audio
+ * Fingerprinting System" by Haitsma and Kalker.
+ * <p>
+ * Candidate alignments (the difference in time between the two files) are
+ * seeded by the exact hash collisions between the two fingerprints. For each
+ * of the best supported alignments, the bit error rate between the aligned
+ * sub-fingerprints is computed over blocks of 5 seconds. The sub-fingerprints
+ * are packed two to a long so that the bit errors of two frames are counted
+ * at once. A single bit flipped by re-encoding therefore only adds to the bit
+ * error rate instead of losing the frame.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class BitErrorRateMatcher {
+
+    private static final int BLOCK_SIZE_IN_SECONDS = 5;
+    // duration of the windows used to locate the start of a matching segment
+    // preceding the best matching block
+    private static final double START_WINDOW_IN_SECONDS = 0.2;
+    // maximum bit error rate of a block for it to be considered as a match.
+    // Only 24 of the 32 bits of a sub-fingerprint are computed from Bark
+    // bands that are present in the analyzed range, the others never differ,
+    // so unrelated audio shows a bit error rate of about 0.375 rather than
+    // 0.5
+    private static final double BER_THRESHOLD = 0.32;
+    // number of alignments with the most hash collisions that are scored
+    private static final int MAX_CANDIDATE_ALIGNMENTS = 8;
+    // minimum number of hash collisions needed for an alignment to be scored
+    private static final int MIN_COLLISIONS_FOR_CANDIDATE = 3;
+    // hashes occurring more often than this in both files are too common to
+    // indicate an alignment and are not used for seeding
+    private static final int MAX_POSTINGS_PRODUCT_FOR_SEED = 256;
+
+    /**
+     * Returns the offset in seconds of the beginning of the matching segment
+     * within the first file, along with the offset in seconds of the beginning
+     * of the matching segment within the second file. If there is no match,
+     * returns a null
+     *
+     * @param aS1 - {@ComparableAudioFile} to be compared
+     * @param aS2 - {@ComparableAudioFile} to be compared with
+     * @return - a double[2], where, result[0] and result[1] corresponds to the
+     *         times at which the match(if any) has occurred
+     */
+    public static double[] getMatchPositionInSeconds(
+            ComparableAudioFile aS1,
+            ComparableAudioFile aS2) {
+        int[] sfp1 = aS1.getSubFingerprints();
+        int[] sfp2 = aS2.getSubFingerprints();
+        double frameOffset = ComparableAudioFile.getFrameOffsetInSeconds();
+        // the number of words (two frames each) in a block
+        int blockWords =
+                (int) Math.ceil(BLOCK_SIZE_IN_SECONDS / frameOffset / 2);
+        int startWords =
+                Math.max(1, (int) Math.ceil(START_WINDOW_IN_SECONDS
+                        / frameOffset / 2));
+        if (sfp1.length < 2 * blockWords || sfp2.length < 2 * blockWords) {
+            return null;
+        }
+        int[] candidates =
+                findCandidateAlignments(aS1, aS2.getFingerprint(),
+                        sfp1.length, sfp2.length);
+        if (candidates.length == 0) {
+            return null;
+        }
+
+        long[] packed1 = pack(sfp1, 0);
+        long[] packed2Even = pack(sfp2, 0);
+        long[] packed2Odd = pack(sfp2, 1);
+        double bestBer = BER_THRESHOLD;
+        int bestWord = -1, bestAlignment = 0;
+        for (int alignment : candidates) {
+            long[] packed2 = (alignment & 1) == 0 ? packed2Even : packed2Odd;
+            int shift = Math.floorDiv(alignment, 2);
+            int lo = Math.max(0, -shift);
+            int hi = Math.min(packed1.length, packed2.length - shift);
+            if (hi - lo < blockWords) {
+                continue;
+            }
+            // prefix sums of the bit errors of the aligned words
+            int[] errors = new int[hi - lo + 1];
+            for (int j = lo; j < hi; j++) {
+                errors[j - lo + 1] =
+                        errors[j - lo]
+                                + Long.bitCount(packed1[j]
+                                        ^ packed2[j + shift]);
+            }
+            for (int j = 0; j + blockWords <= hi - lo; j++) {
+                double ber =
+                        (errors[j + blockWords] - errors[j])
+                                / (64.0 * blockWords);
+                if (ber < bestBer) {
+                    bestBer = ber;
+                    // moves the start of the block back as long as the
+                    // words immediately preceding it also match
+                    int start = j;
+                    while (start >= startWords
+                            && (errors[start] - errors[start - startWords])
+                                    / (64.0 * startWords) < BER_THRESHOLD) {
+                        start--;
+                    }
+                    bestWord = start + lo;
+                    bestAlignment = alignment;
+                }
+            }
+        }
+        if (bestWord == -1) {
+            return null;
+        }
+        int frame1 = 2 * bestWord;
+        return new double[] { frameOffset * frame1,
+                frameOffset * (frame1 + bestAlignment) };
+    }
+
+    /**
+     * Finds the alignments (time in the second fingerprint minus time in the
+     * first) supported by the most exact hash collisions. If multi-probe
+     * lookups are enabled, the collisions of the hashes of the first file with
+     * their least reliable bits flipped are counted as well
+     *
+     * @return - the candidate alignments, best supported first
+     */
+    private static int[] findCandidateAlignments(
+            ComparableAudioFile aS1,
+            Map<Integer, List<Integer>> fp2,
+            int frameCount1,
+            int frameCount2) {
+        Map<Integer, List<Integer>> fp1 = aS1.getFingerprint();
+        int[] weak =
+                ComparableAudioFile.isMultiProbe() ? aS1.getWeakBits() : null;
+        int[] probes = new int[3];
+        // votes[alignment + frameCount1] counts the collisions of an alignment
+        int[] votes = new int[frameCount1 + frameCount2];
+        for (Map.Entry<Integer, List<Integer>> e : fp1.entrySet()) {
+            int k = e.getKey();
+            if (ComparableAudioFile.isStopped(k)) {
+                continue;
+            }
+            List<Integer> t1 = e.getValue();
+            List<Integer> t2 = fp2.get(k);
+            if (t2 != null
+                    && t1.size() * t2.size() <= MAX_POSTINGS_PRODUCT_FOR_SEED) {
+                for (int a : t1) {
+                    for (int b : t2) {
+                        votes[b - a + frameCount1]++;
+                    }
+                }
+            }
+            if (weak == null) {
+                continue;
+            }
+            for (int a : t1) {
+                int n = AcousticAnalyzer.probes(k, weak[a], probes);
+                for (int i = 0; i < n; i++) {
+                    List<Integer> tp = fp2.get(probes[i]);
+                    if (tp == null
+                            || tp.size() > MAX_POSTINGS_PRODUCT_FOR_SEED
+                            || ComparableAudioFile.isStopped(probes[i])) {
+                        continue;
+                    }
+                    for (int b : tp) {
+                        votes[b - a + frameCount1]++;
+                    }
+                }
+            }
+        }
+        int[] best = new int[MAX_CANDIDATE_ALIGNMENTS];
+        int[] bestVotes = new int[MAX_CANDIDATE_ALIGNMENTS];
+        int count = 0;
+        for (int i = 0; i < votes.length; i++) {
+            int v = votes[i];
+            if (v < MIN_COLLISIONS_FOR_CANDIDATE
+                    || (count == MAX_CANDIDATE_ALIGNMENTS
+                    && v <= bestVotes[count - 1])) {
+                continue;
+            }
+            // insertion into the list of best alignments ordered by votes
+            int pos = count < MAX_CANDIDATE_ALIGNMENTS ? count++ : count - 1;
+            while (pos > 0 && bestVotes[pos - 1] < v) {
+                best[pos] = best[pos - 1];
+                bestVotes[pos] = bestVotes[pos - 1];
+                pos--;
+            }
+            best[pos] = i - frameCount1;
+            bestVotes[pos] = v;
+        }
+        int[] candidates = new int[count];
+        System.arraycopy(best, 0, candidates, 0, count);
+        return candidates;
+    }
+
+    /**
+     * Packs the sub-fingerprints starting at the given index two to a long,
+     * the earlier frame in the lower 32 bits
+     */
+    private static long[] pack(int[] sfp, int start) {
+        int words = Math.max(0, (sfp.length - start) / 2);
+        long[] packed = new long[words];
+        for (int j = 0, i = start; j < words; j++, i += 2) {
+            packed[j] = (sfp[i] & 0xFFFFFFFFL) | ((long) sfp[i + 1] << 32);
+        }
+        return packed;
+    }
+
+}
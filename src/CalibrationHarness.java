@@ -0,0 +1,225 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class measures the accuracy and the throughput of the matching on a
+ * corpus generated by {@SyntheticCorpus}, for every mode and for every
+ * combination of the thresholds of the matching algorithm (the error
+ * density, the initial error threshold and the number of frames of a match)
+ * in a grid spanning the values used by the modes. The files of the corpus
+ * are analyzed once per mode, then every query is compared with every
+ * reference for every combination of thresholds. The fingerprints are
+ * computed by the {@SubFingerprintHashers.TYPES} given, BARK by default.
+ *
+ * A query reported to match a reference is counted as a true positive if the
+ * segment of the reference is embedded in the query and the match lies
+ * within the segment at the same alignment, give or take
+ * MAX_ALIGNMENT_ERROR. Every other match reported is a false positive, and
+ * every embedded segment not matched is a false negative. The throughput is
+ * the number of hours of audio of the corpus analyzed and compared per
+ * second. A line is printed per combination:
+ *
+ * <pre>
+ * mode density threshold frames tp fp fn precision recall audio-h/s
+ *      match time (s) recall for every {@SyntheticCorpus.TRANSFORMS}
+ * </pre>
+ *
+ * Usage: java CalibrationHarness directory [threads] [hash type]
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class CalibrationHarness {
+
+    private static final ComparableAudioFiles.MODES[] MODES =
+            ComparableAudioFiles.MODES.values();
+    private static final double[] ERROR_DENSITIES = { 2, 4.3, 6, 8 };
+    private static final int[] ERROR_THRESHOLDS = { 2, 4, 8, 12 };
+    private static final int[] FRAME_COUNTS = { 70, 105, 140 };
+    // largest difference in seconds between the alignment of a match and
+    // the alignment of the embedded segment
+    private static final double MAX_ALIGNMENT_ERROR = 0.5;
+    private static final String RESULT = "%-8s %7.1f %9d %6d %4d %4d %4d"
+            + " %9.3f %6.3f %9.2f %7.2f";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("ERROR: usage: java CalibrationHarness"
+                    + " directory [threads] [hash type]");
+            System.exit(-1);
+        }
+        File dir = new File(args[0]);
+        if (args.length > 1) {
+            ComparableAudioFiles.setThreadCount(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            SubFingerprintHashers.setType(SubFingerprintHashers.TYPES
+                    .valueOf(args[2].toUpperCase()));
+        }
+        Map<String, SyntheticCorpus.Embedding> truth =
+                new HashMap<String, SyntheticCorpus.Embedding>();
+        for (SyntheticCorpus.Embedding e : SyntheticCorpus.readTruth(dir)) {
+            truth.put(e.getQuery(), e);
+        }
+
+        StringBuilder header =
+                new StringBuilder("mode     density threshold frames"
+                        + "   tp   fp   fn precision recall audio-h/s"
+                        + "   match");
+        for (SyntheticCorpus.TRANSFORMS t : SyntheticCorpus.TRANSFORMS
+                .values()) {
+            header.append(' ').append(t);
+        }
+        System.out.println(header);
+        for (ComparableAudioFiles.MODES mode : MODES) {
+            run(dir, mode, truth);
+        }
+    }
+
+    /**
+     * Analyzes the corpus in the given mode and prints the results of every
+     * combination of thresholds
+     */
+    private static void run(
+            File dir,
+            ComparableAudioFiles.MODES mode,
+            Map<String, SyntheticCorpus.Embedding> truth)
+            throws IOException, InterruptedException {
+        ComparableAudioFiles.setMode(mode);
+        AudioFile[] refFiles =
+                AudioFiles.makeAudioFilesFromArg("-d", new File(dir,
+                        SyntheticCorpus.REFERENCE_DIRECTORY).getPath(), 1);
+        AudioFile[] queryFiles =
+                AudioFiles.makeAudioFilesFromArg("-d", new File(dir,
+                        SyntheticCorpus.QUERY_DIRECTORY).getPath(), 2);
+        double audioHours =
+                (durationInSeconds(refFiles) + durationInSeconds(queryFiles))
+                        / 3600.0;
+        long start = System.nanoTime();
+        List<ComparableAudioFile> refs =
+                analyzed(ComparableAudioFiles
+                        .makeListOfComparableAudioFile(refFiles));
+        List<ComparableAudioFile> queries =
+                analyzed(ComparableAudioFiles
+                        .makeListOfComparableAudioFile(queryFiles));
+        double analysisTime = (System.nanoTime() - start) / 1e9;
+
+        for (double density : ERROR_DENSITIES) {
+            for (int threshold : ERROR_THRESHOLDS) {
+                for (int frames : FRAME_COUNTS) {
+                    ComparableAudioFile.setMatchThresholds(density,
+                            threshold, frames);
+                    evaluate(mode, density, threshold, frames, queries, refs,
+                            truth, audioHours, analysisTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares every query with every reference with the thresholds set, and
+     * prints the counts of the matches and the throughput
+     */
+    private static void evaluate(
+            ComparableAudioFiles.MODES mode,
+            double density,
+            int threshold,
+            int frames,
+            List<ComparableAudioFile> queries,
+            List<ComparableAudioFile> refs,
+            Map<String, SyntheticCorpus.Embedding> truth,
+            double audioHours,
+            double analysisTime) {
+        SyntheticCorpus.TRANSFORMS[] transforms =
+                SyntheticCorpus.TRANSFORMS.values();
+        int[] found = new int[transforms.length];
+        int[] embedded = new int[transforms.length];
+        int tp = 0, fp = 0;
+        long start = System.nanoTime();
+        for (ComparableAudioFile q : queries) {
+            SyntheticCorpus.Embedding e = truth.get(q.getFileName());
+            for (ComparableAudioFile r : refs) {
+                double[] match = q.getMatchPositionInSeconds(r);
+                if (match == null) {
+                    continue;
+                }
+                if (e != null && e.getReference().equals(r.getFileName())
+                        && isWithinSegment(match, e)) {
+                    tp++;
+                    found[e.getTransform().ordinal()]++;
+                } else {
+                    fp++;
+                }
+            }
+        }
+        double matchTime = (System.nanoTime() - start) / 1e9;
+        for (SyntheticCorpus.Embedding e : truth.values()) {
+            embedded[e.getTransform().ordinal()]++;
+        }
+        int fn = truth.size() - tp;
+
+        StringBuilder line =
+                new StringBuilder(String.format(RESULT, mode, density,
+                        threshold, frames, tp, fp, fn, ratio(tp, tp + fp),
+                        ratio(tp, truth.size()), audioHours
+                                / (analysisTime + matchTime), matchTime));
+        for (int t = 0; t < transforms.length; t++) {
+            line.append(String.format(" %" + transforms[t].name().length()
+                    + ".2f", ratio(found[t], embedded[t])));
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * @return - true if the given match lies within the embedded segment, at
+     *         its alignment
+     */
+    private static boolean isWithinSegment(
+            double[] match,
+            SyntheticCorpus.Embedding e) {
+        double alignment = match[1] - match[0];
+        double expected = e.getReferenceOffset() - e.getQueryOffset();
+        return Math.abs(alignment - expected) <= MAX_ALIGNMENT_ERROR
+                && match[0] >= e.getQueryOffset() - MAX_ALIGNMENT_ERROR
+                && match[0] <= e.getQueryOffset() + e.getLength();
+    }
+
+    /**
+     * @return - the given ratio, 1 if there is nothing to count
+     */
+    private static double ratio(int count, int total) {
+        return total == 0 ? 1 : (double) count / total;
+    }
+
+    /**
+     * @return - the total duration in seconds of the given files
+     */
+    private static double durationInSeconds(AudioFile[] files) {
+        double seconds = 0;
+        for (AudioFile af : files) {
+            seconds += af.getDurationInSeconds();
+        }
+        return seconds;
+    }
+
+    /**
+     * @return - the given list without the files too short to be analyzed
+     */
+    private static List<ComparableAudioFile> analyzed(
+            List<ComparableAudioFile> files) {
+        List<ComparableAudioFile> list = new ArrayList<ComparableAudioFile>();
+        for (ComparableAudioFile as : files) {
+            if (as != null) {
+                list.add(as);
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is the set of the times (analysis frame numbers) of a
+ * fingerprint at which there were hash collisions with another fingerprint,
+ * held as a bitset with a bit per frame. Adding a time sets its bit, so a
+ * time added several times is held once, and the times are read back in
+ * ascending order a 64-bit word at a time, without boxing, hashing or
+ * sorting them. The times of a list that implements {@IntTimes}, such as
+ * the list views of the fingerprints held off the heap or in a catalog, are
+ * added without boxing them either.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class CollisionTimeline {
+
+    private long[] words;
+
+    /**
+     * @param frameCount - the number of frames of the fingerprint, the
+     *            timeline grows if a later time is added
+     */
+    public CollisionTimeline(int frameCount) {
+        words = new long[Math.max(1, (frameCount + 63) >>> 6)];
+    }
+
+    /**
+     * Adds the given time to the timeline
+     *
+     * @param time - a frame number
+     */
+    public void add(int time) {
+        int w = time >>> 6;
+        if (w >= words.length) {
+            words = Arrays.copyOf(words, Math.max(w + 1, words.length << 1));
+        }
+        words[w] |= 1L << time;
+    }
+
+    /**
+     * Removes the given time from the timeline
+     *
+     * @param time - a frame number
+     */
+    public void remove(int time) {
+        int w = time >>> 6;
+        if (w < words.length) {
+            words[w] &= ~(1L << time);
+        }
+    }
+
+    /**
+     * Adds all the given times to the timeline
+     *
+     * @param times - list of frame numbers
+     */
+    public void addAll(List<Integer> times) {
+        if (times instanceof IntTimes) {
+            IntTimes it = (IntTimes) times;
+            for (int i = 0, n = times.size(); i < n; i++) {
+                add(it.getTime(i));
+            }
+            return;
+        }
+        for (int i = 0, n = times.size(); i < n; i++) {
+            add(times.get(i));
+        }
+    }
+
+    /**
+     * @return - the number of distinct times in the timeline
+     */
+    public int size() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Finds the first time in the timeline from the given time on, skipping
+     * a 64-bit word of frames without a collision at a time
+     *
+     * @param from - a frame number
+     * @return - the smallest time in the timeline not less than the given
+     *         time, or -1 if there is none
+     */
+    public int next(int from) {
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        // the bits of the frames before the given one are cleared
+        long word = words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * This interface is implemented by the lists of times that can return a
+     * time as a primitive int, without boxing it
+     *
+     */
+    public interface IntTimes {
+
+        /**
+         * @param index - index of a time in the list
+         * @return - the time at the given index
+         */
+        int getTime(int index);
+    }
+
+}
@@ -1,9 +1,7 @@
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * This class is to represent audio sample data in a format that facilitates
@@ -17,6 +15,10 @@ import java.util.Set;
 public abstract class ComparableAudioFile {
     private static final String ERROR_UNINIIALIZED_CLASS =
             "ERROR: This class must be initialized before use";
+    private static final String ERROR_NOT_INCREMENTAL =
+            "ERROR: The fingerprint of this file cannot be updated";
+    private static final String ERROR_NO_SUB_FINGERPRINTS =
+            "ERROR: The frames of %s cannot be compared bit by bit";
 
     private static Map<Integer, Integer> log2Map =
             new HashMap<Integer, Integer>(17);
@@ -31,10 +33,38 @@ public abstract class ComparableAudioFile {
             min_hash_collisions_for_match;
     private static double offset_in_seconds, error_density;
 
+    private static boolean useBitErrorRateMatch = false;
+    private static boolean useMultiProbe = false;
+    // frames whose RMS amplitude is below this value are not hashed
+    private static double silenceThreshold = 0;
+    // sub-fingerprint recorded for a frame that is not hashed, the hash
+    // computed for a frame in which no Bark band rises above the previous one
+    static final int SILENT_FRAME = Integer.MAX_VALUE;
+    // hashes too common to be used for matching, null if none are stopped
+    private static HashStopList stopList;
+
     private String fileName;
 
     private int bitRate;
 
+    // time ordered sub-fingerprints of the analysis frames, the number of
+    // valid values is given by frameCount
+    private int[] subFingerprints;
+    private int frameCount;
+    // time of the frame at index 0 of subFingerprints, frames before it have
+    // been released
+    private int frameOrigin;
+    // positions of the least reliable bits of every sub-fingerprint, null if
+    // they are not known
+    private int[] weakBits;
+    private int[] weakBitsOut = new int[1];
+    // computes the keys and the sub-fingerprints of the frames, made when the
+    // first frame is analyzed
+    private SubFingerprintHasher hasher;
+    // computes the bins read by the hasher when that is cheaper than the full
+    // FFT, null otherwise
+    private SpectralEngine spectralEngine;
+
     /**
      * 
      * Gets the pre-computed factors for the given size of FFT window and the
@@ -65,14 +95,7 @@ public abstract class ComparableAudioFile {
         Precomputor.initialize(size, hanningWindowSize);
 
         samples_per_frame = framesize;
-        error_threshold = errThreshold;
-        frame_count_for_5_seconds = frameCountForMatch;
-        error_density = errorDensity;
-        min_hash_collisions_for_match =
-                error_threshold
-                        + (int) ((double) frame_count_for_5_seconds
-                        / error_density)
-                        + 2;
+        setMatchThresholds(errorDensity, errThreshold, frameCountForMatch);
         offset_in_seconds = offsetInSeconds;
         fftsize = size;
         bitReverseArray = Precomputor.getBitReverseIndex();
@@ -83,6 +106,112 @@ public abstract class ComparableAudioFile {
         isInitialized = true;
     }
 
+    /**
+     * To change the thresholds used by the matching algorithm, which are
+     * otherwise the ones given to initialize. The fingerprints are not
+     * affected, so the files analyzed so far can be compared again with the
+     * new thresholds
+     * 
+     * @param errorDensity - the error density that will be used by the
+     *            matching algorithm
+     * @param errThreshold - the initial error threshold that will be used by
+     *            the matching algorithm
+     * @param frameCountForMatch - number of sequential frames needed for a
+     *            match
+     */
+    public static void setMatchThresholds(
+            double errorDensity,
+            int errThreshold,
+            int frameCountForMatch) {
+        error_threshold = errThreshold;
+        frame_count_for_5_seconds = frameCountForMatch;
+        error_density = errorDensity;
+        min_hash_collisions_for_match =
+                error_threshold
+                        + (int) ((double) frame_count_for_5_seconds
+                        / error_density)
+                        + 2;
+    }
+
+    /**
+     * To choose the algorithm used for finding matching segments. If set,
+     * candidate alignments found through exact hash collisions are scored by
+     * the bit error rate between the sub-fingerprints of the aligned frames,
+     * which tolerates bits flipped by re-encoding. Otherwise, matches are
+     * found from the sequences of exact hash collisions
+     * 
+     * @param enable - true to use the bit error rate for matching
+     */
+    public static void setBitErrorRateMatch(boolean enable) {
+        useBitErrorRateMatch = enable;
+    }
+
+    /**
+     * To enable lookups of the neighbours of every hash of the first file of
+     * a comparison in which its least reliable bits are flipped, in addition
+     * to the lookup of the hash itself
+     * 
+     * @param enable - true to enable the additional lookups
+     */
+    public static void setMultiProbe(boolean enable) {
+        useMultiProbe = enable;
+    }
+
+    /**
+     * To skip the hashing and indexing of silent or near silent analysis
+     * frames, whose sub-fingerprints are nearly all the same and collide with
+     * every other file. The frames skipped still take up their time, so the
+     * times of the other frames are not affected
+     * 
+     * @param rms - the RMS amplitude, in 16 bit sample units, below which a
+     *            frame is skipped, 0 to hash every frame
+     */
+    public static void setSilenceThreshold(double rms) {
+        silenceThreshold = rms;
+    }
+
+    /**
+     * To ignore the collisions of the hashes that occur in too many of the
+     * fingerprints loaded, both when gathering the collision sets and when
+     * seeding the alignments scored by the bit error rate
+     * 
+     * @param hashStopList - {@HashStopList} counting the fingerprints loaded,
+     *            null to use every hash
+     */
+    public static void setStopList(HashStopList hashStopList) {
+        stopList = hashStopList;
+    }
+
+    /**
+     * @param hash - a sub-fingerprint hash
+     * @return - true if the hash is too common to be used for matching
+     */
+    static boolean isStopped(int hash) {
+        return stopList != null && stopList.isStopped(hash);
+    }
+
+    /**
+     * @return - true if the alignments are scored by the bit error rate
+     */
+    static boolean isBitErrorRateMatch() {
+        return useBitErrorRateMatch;
+    }
+
+    /**
+     * @return - true if the neighbours of the hashes are looked up as well
+     */
+    static boolean isMultiProbe() {
+        return useMultiProbe;
+    }
+
+    /**
+     * @return - the fraction of time in seconds between the start of two
+     *         consecutive analysis frames
+     */
+    static double getFrameOffsetInSeconds() {
+        return offset_in_seconds;
+    }
+
     // constructor
     protected ComparableAudioFile() {
         if (!isInitialized) {
@@ -110,6 +239,72 @@ public abstract class ComparableAudioFile {
         }
     }
 
+    /**
+     * Makes a {@FrameSource} that splits a stream of audio samples into
+     * frames of the configured frame size, windowed by the Hanning window and
+     * padded with zeros to the FFT window size
+     * 
+     * @param hopSize - number of samples between the start of two consecutive
+     *            frames
+     * @return - {@FrameSource} for the configured frame and FFT sizes
+     */
+    protected static FrameSource newFrameSource(int hopSize) {
+        return new FrameSource(samples_per_frame, hopSize, hannWindow, fftsize);
+    }
+
+    /**
+     * Makes a {@FrameSource} as {@link #newFrameSource(int)} does, whose
+     * frames start a fractional number of samples apart
+     * 
+     * @param hopNumerator - numerator of the number of samples between the
+     *            start of two consecutive frames
+     * @param hopDenominator - denominator of the number of samples between
+     *            the start of two consecutive frames
+     * @return - {@FrameSource} for the configured frame and FFT sizes
+     */
+    protected static FrameSource newFrameSource(
+            int hopNumerator,
+            int hopDenominator) {
+        return new FrameSource(samples_per_frame, hopNumerator,
+                hopDenominator, hannWindow, fftsize);
+    }
+
+    /**
+     * Updates the fingerprint with all the frames of the given segment of a
+     * stream of audio samples that become available from the given
+     * {@FrameSource}. Frames below the silence threshold are recorded as
+     * SILENT_FRAME without being hashed or added to the fingerprint
+     * 
+     * @param frames - {@FrameSource} splitting the stream into frames
+     * @param data - the next segment of audio samples of the stream
+     * @param input - array of size 'fftsize' used to hold a frame
+     * @param time - relative time of the next frame
+     * @param fingerprint - the hash map into which the sub-fingerprints are
+     *            stored
+     * @return - relative time of the frame following the last frame analyzed
+     */
+    protected int updateFingerprint(
+            FrameSource frames,
+            double[] data,
+            double[] input,
+            int time,
+            Map<Integer, List<Integer>> fingerprint) {
+        for (int off = 0; off < data.length;) {
+            off = off + frames.write(data, off, data.length - off);
+            while (frames.hasFrame()) {
+                double rms = frames.nextFrame(input);
+                if (rms < silenceThreshold) {
+                    recordSubFingerprint(time++, SILENT_FRAME,
+                            AcousticAnalyzer.NO_WEAK_BIT
+                                    | AcousticAnalyzer.NO_WEAK_BIT << 8);
+                } else {
+                    updateFingerprint(input, time++, fingerprint);
+                }
+            }
+        }
+        return time;
+    }
+
     /**
      * Non recursive FFT - Translated by Magesh, Mayank, Naren from Pseudocode
      * in Introduction to Algorithms - Third Edition
@@ -159,6 +354,49 @@ public abstract class ComparableAudioFile {
         return brArr;
     }
 
+    /**
+     * Computes the bins of the given windowed analysis frame needed by the
+     * hasher, using the {@SpectralEngine} chosen for the configured sizes or
+     * the full FFT
+     * 
+     * @param input - A windowed analysis frame of size 'fftsize'
+     * @return - the frequency domain data in the layout returned by
+     *         performFFT
+     */
+    protected double[] spectrum(double[] input) {
+        return spectralEngine == null ? performFFT(input) : spectralEngine
+                .transform(input);
+    }
+
+    /**
+     * Computes the keys of the given windowed analysis frame with the
+     * {@SubFingerprintHasher} of the type set, stores them in the given
+     * fingerprint and records the sub-fingerprint of the frame at the given
+     * time, along with its least reliable bits if the hasher computes them
+     * 
+     * @param input - A windowed analysis frame of size 'fftsize'
+     * @param time - relative time of the frame
+     * @param fingerprint - the hash map into which the keys are stored
+     */
+    protected void updateFingerprint(
+            double[] input,
+            int time,
+            Map<Integer, List<Integer>> fingerprint) {
+        if (hasher == null) {
+            hasher = SubFingerprintHashers.make();
+            spectralEngine =
+                    SpectralEngine.choose(fftsize, samples_per_frame,
+                            hasher.getFirstBin(), hasher.getLastBin());
+        }
+        int hash =
+                hasher.update(spectrum(input), time, fingerprint, weakBitsOut);
+        if (hasher.hasWeakBits()) {
+            recordSubFingerprint(time, hash, weakBitsOut[0]);
+        } else {
+            recordSubFingerprint(time, hash);
+        }
+    }
+
     /**
      * This is a helper method used to prepare the bit reversed array needed by
      * the non-recursive FFT implementation. It returns an array of twice the
@@ -190,35 +428,152 @@ public abstract class ComparableAudioFile {
      *         times at which the match(if any) has occurred
      */
     public double[] getMatchPositionInSeconds(ComparableAudioFile aS2) {
-        return computeFragmentMatchWithTime(this.getFingerprint(),
-                aS2.getFingerprint());
+        if (useBitErrorRateMatch) {
+            return BitErrorRateMatcher.getMatchPositionInSeconds(this, aS2);
+        }
+        if (useMultiProbe && getWeakBits() != null) {
+            return computeFragmentMatchWithProbes(aS2);
+        }
+        return computeFragmentMatch(this.getFingerprint(), getFrameCount(),
+                aS2.getFingerprint(), aS2.getFrameCount());
+    }
+
+    /**
+     * Finds the matching segment between two fingerprints with the method
+     * suited to the keys of the {@SubFingerprintHasher} in use, the
+     * alignment of the key collisions for keys that span several frames and
+     * the sequences of the collision times otherwise
+     * 
+     * @param fp1 - HashMap representing a fingerprint
+     * @param fp2 - HashMap representing another fingerprint
+     * @return - If there is a match, returns an array of two elements with
+     *         each element representing the time at which the match was found.
+     *         Otherwise, returns a null value.
+     */
+    static double[] computeFragmentMatch(
+            Map<Integer, List<Integer>> fp1,
+            Map<Integer, List<Integer>> fp2) {
+        return computeFragmentMatch(fp1, 0, fp2, 0);
+    }
+
+    /**
+     * Finds the matching segment between two fingerprints in the same way as
+     * {@link #computeFragmentMatch(Map, Map)}, given the number of frames of
+     * the two fingerprints, which size the collision timelines
+     * 
+     * @param fp1 - HashMap representing a fingerprint
+     * @param frames1 - number of frames of the first fingerprint, 0 if not
+     *            known
+     * @param fp2 - HashMap representing another fingerprint
+     * @param frames2 - number of frames of the second fingerprint, 0 if not
+     *            known
+     * @return - If there is a match, returns an array of two elements with
+     *         each element representing the time at which the match was found.
+     *         Otherwise, returns a null value.
+     */
+    static double[] computeFragmentMatch(
+            Map<Integer, List<Integer>> fp1,
+            int frames1,
+            Map<Integer, List<Integer>> fp2,
+            int frames2) {
+        if (SubFingerprintHashers.TYPES.LANDMARK == SubFingerprintHashers
+                .getType()) {
+            return LandmarkMatcher.getMatchPositionInSeconds(fp1, fp2);
+        }
+        return computeFragmentMatchWithTime(fp1, frames1, fp2, frames2);
     }
 
     /**
-     * This method extracts two sets of time sequences (one for each
+     * This method extracts two timelines of time sequences (one for each
      * fingerprint) containing the time instances at which there were hash
      * collisions. It then identifies if there is a match and the time at which
      * the match has occurred by identifying the presence of sequences in the
-     * two sets
+     * two timelines
      * @param fp1 - HashMap representing a fingerprint
+     * @param frames1 - number of frames of the first fingerprint
      * @param fp2 - HashMap representing another fingerprint
+     * @param frames2 - number of frames of the second fingerprint
      * @return - If there is a match, returns an array of two elements with
      *         each element representing the time at which the match was found.
      *         Otherwise, returns a null value.
      */
-    protected double[] computeFragmentMatchWithTime(
+    protected static double[] computeFragmentMatchWithTime(
             Map<Integer, List<Integer>> fp1,
-            Map<Integer, List<Integer>> fp2) {
-        Set<Integer> s = new HashSet<Integer>(), s2 = new HashSet<Integer>();
-        for (int k : fp1.keySet()) {
-            List<Integer> t1 = fp1.get(k);
+            int frames1,
+            Map<Integer, List<Integer>> fp2,
+            int frames2) {
+        CollisionTimeline s = new CollisionTimeline(frames1);
+        CollisionTimeline s2 = new CollisionTimeline(frames2);
+        for (Map.Entry<Integer, List<Integer>> e : fp1.entrySet()) {
+            int k = e.getKey();
             List<Integer> t2 = fp2.get(k);
-            if (t2 == null) {
+            if (t2 == null || isStopped(k)) {
                 continue;
             }
-            s.addAll(t1);
+            s.addAll(e.getValue());
             s2.addAll(t2);
         }
+        return computeMatchFromCollisionTimes(s, s2);
+    }
+
+    /**
+     * This method extracts the two timelines of time sequences in the same
+     * way as {@link #computeFragmentMatchWithTime(Map, int, Map, int)}, and
+     * in addition counts a collision for every frame of this instance whose
+     * sub-fingerprint with one or both of its least reliable bits flipped is
+     * present in the other fingerprint
+     * 
+     * @param aS2 - {@ComparableAudioFile} to be compared with
+     * @return - If there is a match, returns an array of two elements with
+     *         each element representing the time at which the match was found.
+     *         Otherwise, returns a null value.
+     */
+    protected double[] computeFragmentMatchWithProbes(ComparableAudioFile aS2) {
+        Map<Integer, List<Integer>> fp1 = getFingerprint();
+        Map<Integer, List<Integer>> fp2 = aS2.getFingerprint();
+        int[] weak = getWeakBits();
+        int[] probes = new int[3];
+        CollisionTimeline s = new CollisionTimeline(getFrameCount());
+        CollisionTimeline s2 = new CollisionTimeline(aS2.getFrameCount());
+        for (Map.Entry<Integer, List<Integer>> e : fp1.entrySet()) {
+            int k = e.getKey();
+            List<Integer> t1 = e.getValue();
+            List<Integer> t2 = fp2.get(k);
+            if (isStopped(k)) {
+                continue;
+            }
+            if (t2 != null) {
+                s.addAll(t1);
+                s2.addAll(t2);
+            }
+            for (int t : t1) {
+                int n = AcousticAnalyzer.probes(k, weak[t], probes);
+                for (int i = 0; i < n; i++) {
+                    List<Integer> tp = fp2.get(probes[i]);
+                    if (tp != null && !isStopped(probes[i])) {
+                        s.add(t);
+                        s2.addAll(tp);
+                    }
+                }
+            }
+        }
+        return computeMatchFromCollisionTimes(s, s2);
+    }
+
+    /**
+     * Identifies if there is a match and the time at which the match has
+     * occurred from the two timelines of time instances at which there were
+     * hash collisions
+     * 
+     * @param s - time instances of the collisions in the first fingerprint
+     * @param s2 - time instances of the collisions in the second fingerprint
+     * @return - If there is a match, returns an array of two elements with
+     *         each element representing the time at which the match was found.
+     *         Otherwise, returns a null value.
+     */
+    static double[] computeMatchFromCollisionTimes(
+            CollisionTimeline s,
+            CollisionTimeline s2) {
         int sindex1 = -1, sindex2 = -1;
         sindex2 = extractSequenceStartIndexForMatch(s2);
         if (sindex2 == -1) {
@@ -245,7 +600,10 @@ public abstract class ComparableAudioFile {
      * are many such discontinuous sequences, keeps track of the longest such
      * sequence so far.
      * <p>
-     * 1) sorts the values in the input set in ascending order
+     * 1) walks the values in the input timeline in ascending order, a word of
+     * the timeline at a time, with one cursor at the anchor point and one at
+     * the current element, so no array of the values or of their differences
+     * is built
      * <p>
      * 2) traverses the list from an anchor point (starts with the first
      * element), if the difference between consecutive values is 1, the no
@@ -271,55 +629,51 @@ public abstract class ComparableAudioFile {
      * sequence
      * 
      * 
-     * @param s - set of values representing time offsets from the beginning
+     * @param s - timeline of values representing time offsets from the
+     *            beginning
      * @return - starting value of a sequence that corresponds to a 5 second
      *         match. Returns -1 if no such sequence is found
      */
-    private int extractSequenceStartIndexForMatch(Set<Integer> s) {
-        int size = s.size();
-        int errors = 0, sofar = 0, seq = 0, prevseq = 0, rindex = -1;
-        Integer[] sequence = new Integer[size];
-        sequence = s.toArray(sequence);
-        Arrays.sort(sequence);
+    private static int extractSequenceStartIndexForMatch(CollisionTimeline s) {
         // if the number of values in the sequence is less than the min values
         // needed for match, exit early
-        if (sequence.length <= min_hash_collisions_for_match) {
+        if (s.size() <= min_hash_collisions_for_match) {
             return -1;
         }
-        int cleanupidx = 0;
-        int[] errarr = new int[size];
-        int[] diffarr = new int[size];
-        int diff = 0;
-        for (int i = 0; i < sequence.length - 1;) {
+        // the sequence is the window of the timeline from the anchor to the
+        // current value, walked by two cursors over the words of the
+        // timeline, so the gaps leaving the window are read again instead of
+        // being kept
+        int errors = 0, sofar = 0, seq = 0, prevseq = 0, rvalue = -1;
+        int anchor = s.next(0);
+        int current = anchor;
+        int next = s.next(current + 1);
+        while (next != -1) {
             if (errors >= (error_threshold + (error_density * seq))) {
-                if (cleanupidx == sequence.length) {
-                    break;
+                int gap = s.next(anchor + 1) - anchor;
+                sofar = sofar - gap;
+                if (gap > 1) {
+                    errors = errors - gap;
                 }
-                sofar = sofar - diffarr[cleanupidx];
-                errors = errors - errarr[cleanupidx];
-                cleanupidx++;
+                anchor = anchor + gap;
                 seq = seq - 1;
                 continue;
             } else if (sofar > frame_count_for_5_seconds) {
                 if (seq > prevseq) {
                     prevseq = seq;
-                    rindex = Math.max(i - seq, 0);
+                    rvalue = anchor;
                 }
             }
-            diff = sequence[i + 1] - sequence[i];
-            diffarr[i] = diff;
+            int diff = next - current;
             if (diff > 1) {
                 errors = errors + diff;
-                errarr[i] = diff;
             }
             sofar = sofar + diff;
             seq++;
-            i++;
+            current = next;
+            next = s.next(current + 1);
         }
-        if (rindex == -1)
-            return -1;
-        else
-            return sequence[rindex];
+        return rvalue;
     }
 
     /**
@@ -340,6 +694,163 @@ public abstract class ComparableAudioFile {
         this.bitRate = bitRate;
     }
 
+    /**
+     * Takes over the sub-fingerprints and the least reliable bits of the
+     * frames of another instance for the same audio file, whose fingerprint
+     * this instance holds in another form. The arrays are shared, not copied
+     * 
+     * @param other - {@ComparableAudioFile} whose frames were analyzed
+     */
+    protected void shareSubFingerprints(ComparableAudioFile other) {
+        subFingerprints = other.subFingerprints;
+        frameCount = other.frameCount;
+        frameOrigin = other.frameOrigin;
+        weakBits = other.weakBits;
+    }
+
+    /**
+     * Records the sub-fingerprint of the analysis frame at the given time. The
+     * frames are expected to be recorded in the order of time
+     * 
+     * @param time - relative time of the frame, as used in the fingerprint
+     * @param hash - sub-fingerprint computed for the frame
+     */
+    protected void recordSubFingerprint(int time, int hash) {
+        if (subFingerprints == null) {
+            subFingerprints = new int[1024];
+        }
+        int idx = time - frameOrigin;
+        if (idx >= subFingerprints.length) {
+            subFingerprints =
+                    Arrays.copyOf(subFingerprints, Math.max(idx + 1,
+                            subFingerprints.length << 1));
+        }
+        subFingerprints[idx] = hash;
+        frameCount = Math.max(frameCount, time + 1);
+    }
+
+    /**
+     * Records the sub-fingerprint of the analysis frame at the given time
+     * along with the positions of its least reliable bits
+     * 
+     * @param time - relative time of the frame, as used in the fingerprint
+     * @param hash - sub-fingerprint computed for the frame
+     * @param weak - positions of the least reliable bits of the hash, as
+     *            returned by {@AcousticAnalyzer#weakestBits}
+     */
+    protected void recordSubFingerprint(int time, int hash, int weak) {
+        recordSubFingerprint(time, hash);
+        if (weakBits == null) {
+            weakBits = new int[subFingerprints.length];
+        } else if (weakBits.length < subFingerprints.length) {
+            weakBits = Arrays.copyOf(weakBits, subFingerprints.length);
+        }
+        weakBits[time - frameOrigin] = weak;
+    }
+
+    /**
+     * Returns the number of frames without rebuilding the sub-fingerprints,
+     * so implementations whose sub-fingerprints are not recorded return the
+     * number of frames they store along with the fingerprint
+     * 
+     * @return - the number of analysis frames analyzed so far, including the
+     *         ones that have been released, or 0 if it is not known
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @param time - relative time of a frame that has not been released
+     * @return - the sub-fingerprint of the frame at the given time
+     */
+    public int getSubFingerprint(int time) {
+        return subFingerprints[time - frameOrigin];
+    }
+
+    /**
+     * Updates the fingerprint with the next segment of canonicalized audio
+     * samples, for instances that analyze an unbounded stream of audio
+     * 
+     * @param samples - the next segment of audio samples
+     */
+    public void appendSamples(double[] samples) {
+        throw new RuntimeException(ERROR_NOT_INCREMENTAL);
+    }
+
+    /**
+     * Releases the fingerprint and the sub-fingerprints of all the frames
+     * analyzed so far, for instances that analyze an unbounded stream of
+     * audio once the frames have been consumed. The times of the frames that
+     * are analyzed later continue from the frames released
+     */
+    public void releaseAnalyzedFrames() {
+        getFingerprint().clear();
+        subFingerprints = null;
+        weakBits = null;
+        frameOrigin = frameCount;
+    }
+
+    /**
+     * Returns the positions of the least reliable bits of the sub-fingerprints
+     * of all the analysis frames, ordered by time, if they are known
+     * 
+     * @return - int[] where the value at index i holds the positions of the
+     *         least reliable bits of the frame at time i, or null if they are
+     *         not known
+     */
+    public int[] getWeakBits() {
+        return weakBits;
+    }
+
+    /**
+     * Returns the sub-fingerprints of all the analysis frames of the audio
+     * file encapsulated by this instance, ordered by time. If they were not
+     * recorded while the fingerprint was computed, they are rebuilt from the
+     * fingerprint, where the frames missing from the fingerprint were silent.
+     * Must not be used once frames have been released. Synchronized as the
+     * instance may be compared on several threads
+     * 
+     * @return - int[] where the value at index i is the sub-fingerprint of
+     *         the frame at time i
+     */
+    public synchronized int[] getSubFingerprints() {
+        if (subFingerprints == null) {
+            // the keys of the fingerprint are the sub-fingerprints only if
+            // every key belongs to a single frame
+            if (SubFingerprintHashers.TYPES.LANDMARK == SubFingerprintHashers
+                    .getType()) {
+                throw new RuntimeException(String.format(
+                        ERROR_NO_SUB_FINGERPRINTS, getFileName()));
+            }
+            Map<Integer, List<Integer>> fp = getFingerprint();
+            for (Map.Entry<Integer, List<Integer>> e : fp.entrySet()) {
+                for (int t : e.getValue()) {
+                    recordSubFingerprint(t, e.getKey());
+                }
+            }
+            // the frames at the end of the file are missing from the
+            // fingerprint if they were silent
+            frameCount = Math.max(frameCount, getFrameCount());
+            if (subFingerprints == null) {
+                subFingerprints = new int[frameCount];
+            } else if (subFingerprints.length < frameCount) {
+                subFingerprints = Arrays.copyOf(subFingerprints, frameCount);
+            }
+            // no sub-fingerprint is 0, as the bits above the Bark bands are
+            // always set
+            for (int i = 0; i < frameCount; i++) {
+                if (subFingerprints[i] == 0) {
+                    subFingerprints[i] = SILENT_FRAME;
+                }
+            }
+        }
+        if (subFingerprints.length != frameCount) {
+            subFingerprints = Arrays.copyOf(subFingerprints, frameCount);
+        }
+        return subFingerprints;
+    }
+
     /**
      * 
      * @return - the fingerprint corresponding to this instance
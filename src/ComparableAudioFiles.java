@@ -1,8 +1,16 @@
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 
@@ -24,18 +32,41 @@ public class ComparableAudioFiles {
      * <pre>
      * FAST - Fast mode, faster execution time with reduced accuracy. 
      * NORMAL - Default mode, slower execution time with improved accuracy.
+     * LOWRATE - Low rate mode, the frames of the normal mode analyzed at a
+     *           quarter of the sampling rate with a correspondingly smaller
+     *           FFT
      * </pre>
      * 
      */
     public enum MODES {
-        FAST, NORMAL
+        FAST, NORMAL, LOWRATE
     }
 
     private static final int SAMPLES_PER_FRAME = 1764;
     private static final int FFT_WINDOW_SIZE = 2048;
+    // the Bark bands analyzed end at 2.7 kHz, well within the pass band of
+    // the anti-aliasing filter at the canonical sampling rate reduced by this
+    // factor (11025 Hz), so they are neither attenuated nor aliased
+    private static final int DECIMATION_FACTOR = 4;
     private static final int FRAGMENT_SIZE_TO_MATCH_IN_SECONDS = 5;
+    // length of the segments in which the files are read
+    private static final int STREAMING_LENGTH = SAMPLES_PER_FRAME * 32;
+    // number of files of a list analyzed at a time per thread, which bounds
+    // the memory held by the files being read and analyzed
+    private static final int FILES_IN_FLIGHT_PER_THREAD = 2;
 
     private static MODES mode;
+    // index holding the fingerprints of the files analyzed off the heap,
+    // null if they are held on the heap
+    private static OffHeapFingerprintIndex offHeapIndex;
+    // store keeping the fingerprints of the files analyzed within a budget
+    // of memory, null if they are all held on the heap
+    private static FingerprintSpillStore spillStore;
+    // number of threads on which the files of a list are analyzed
+    private static int threadCount = Runtime.getRuntime()
+            .availableProcessors();
+    // whether two names of the same file match without being compared
+    private static boolean identicalFilesMatched = true;
 
     /**
      * This is an optional method used to set the execution mode. If no mode is
@@ -47,35 +78,329 @@ public class ComparableAudioFiles {
         mode = m;
     }
 
+    /**
+     * This is an optional method used to hold the fingerprints of the files
+     * analyzed from now on in the given index, outside of the heap, instead
+     * of in the instances of {@ComparableAudioFile} themselves
+     * @param index - {@OffHeapFingerprintIndex}, null to hold the
+     *            fingerprints on the heap
+     */
+    public static void setOffHeapIndex(OffHeapFingerprintIndex index) {
+        offHeapIndex = index;
+    }
+
+    /**
+     * This is an optional method used to keep the fingerprints of the files
+     * analyzed from now on in the given store, which spills them to disk once
+     * they exceed its budget of memory. Not used if an
+     * {@OffHeapFingerprintIndex} is set
+     * @param store - {@FingerprintSpillStore}, null to hold the fingerprints
+     *            on the heap
+     */
+    public static void setSpillStore(FingerprintSpillStore store) {
+        spillStore = store;
+    }
+
+    /**
+     * This is an optional method used to set the number of threads on which
+     * the files of a list are read and analyzed, by default as many as there
+     * are processors
+     * @param count - number of threads
+     */
+    public static void setThreadCount(int count) {
+        threadCount = count;
+    }
+
+    /**
+     * This is an optional method used to set whether two names of the same
+     * file, such as a file and a copy of it as resolved by {@InputResolver},
+     * are reported as a match from the start of both without their audio
+     * being compared. They are by default
+     * 
+     * @param matched - false to compare the audio of the same file
+     */
+    public static void setIdenticalFilesMatched(boolean matched) {
+        identicalFilesMatched = matched;
+    }
+
+    /**
+     * @return - true if two names of the same file are reported as a match
+     *         without their audio being compared
+     */
+    public static boolean isIdenticalFilesMatched() {
+        return identicalFilesMatched;
+    }
+
+    /**
+     * @param as1 - a {@ComparableAudioFile}
+     * @param as2 - another {@ComparableAudioFile}
+     * @return - true if the given instances are two names of the same file,
+     *         to be reported as a match without their audio being compared
+     */
+    public static boolean isIdenticalPair(
+            ComparableAudioFile as1,
+            ComparableAudioFile as2) {
+        return identicalFilesMatched && aliased(as1) == aliased(as2);
+    }
+
+    /**
+     * @param af - an {@AudioFile}
+     * @return - true if the file is shorter than the minimum duration needed
+     *         for a match
+     */
+    public static boolean isTooShort(AudioFile af) {
+        return af.getDurationInSeconds() < FRAGMENT_SIZE_TO_MATCH_IN_SECONDS;
+    }
+
+    /**
+     * @return - the execution mode, {@MODES#NORMAL} if no mode is set
+     */
+    public static MODES getMode() {
+        return mode == null ? MODES.NORMAL : mode;
+    }
+
     /**
      * This method takes a list of {@AudioFile} and returns a list
      * of {@ComparableAudioFile} that encapsulate the
-     * given files in order to facilitate perceptual comparison.
+     * given files in order to facilitate perceptual comparison. The files are
+     * read and analyzed together, on a pool of threadCount threads, as
+     * described in {@link #makeComparableAudioFileAsync}, a few files per
+     * thread at a time, so that the memory held by the files being analyzed
+     * does not grow with the number of files
      * 
      * @param listOfFiles - a list of {@AudioFile} to be analyzed
      * 
      * @return - list of {@ComparableAudioFile} that
      *         facilitates perceptual comparison of each audio file in the
-     *         given list
+     *         given list, in the same order
      */
     public static List<ComparableAudioFile> makeListOfComparableAudioFile(
             AudioFile[] listOfFiles) {
-        int duration;
         List<ComparableAudioFile> asl = new ArrayList<ComparableAudioFile>();
-        for (AudioFile af : listOfFiles) {
-            duration = af.getDurationInSeconds();
-            // If the duration of the audio file is less than minimum duration
-            // needed for a match, the file is skipped
-            if (duration < FRAGMENT_SIZE_TO_MATCH_IN_SECONDS) {
-                continue;
+        for (ComparableAudioFile as : makeArrayOfComparableAudioFile(
+                listOfFiles)) {
+            if (as != null) {
+                asl.add(as);
             }
-            ComparableAudioFile as = make(af);
-            as.setFileName(af.getShortName());
-            asl.add(as);
         }
         return asl;
     }
 
+    /**
+     * This method takes an array of {@AudioFile} and returns an array of the
+     * {@ComparableAudioFile} that encapsulate the given files, analyzed as
+     * described in {@link #makeListOfComparableAudioFile}
+     * 
+     * @param listOfFiles - an array of {@AudioFile} to be analyzed
+     * @return - array of {@ComparableAudioFile} for the given files, at the
+     *         same indices, with null for the files too short to be matched
+     */
+    public static ComparableAudioFile[] makeArrayOfComparableAudioFile(
+            AudioFile[] listOfFiles) {
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        final Semaphore inFlight =
+                new Semaphore(threadCount * FILES_IN_FLIGHT_PER_THREAD);
+        try {
+            List<CompletableFuture<ComparableAudioFile>> futures =
+                    new ArrayList<CompletableFuture<ComparableAudioFile>>(
+                            listOfFiles.length);
+            for (AudioFile af : listOfFiles) {
+                inFlight.acquireUninterruptibly();
+                CompletableFuture<ComparableAudioFile> f =
+                        makeComparableAudioFileAsync(af, pool);
+                f.whenComplete(
+                        new BiConsumer<ComparableAudioFile, Throwable>() {
+                            public void accept(
+                                    ComparableAudioFile as,
+                                    Throwable t) {
+                                inFlight.release();
+                            }
+                        });
+                futures.add(f);
+            }
+            ComparableAudioFile[] asa =
+                    new ComparableAudioFile[listOfFiles.length];
+            for (int i = 0; i < asa.length; i++) {
+                asa[i] = join(futures.get(i));
+            }
+            return asa;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Waits for the analysis of a file started by
+     * {@link #makeComparableAudioFileAsync}, raising the error of the file as
+     * it was raised if the analysis failed
+     * 
+     * @param f - future of the {@ComparableAudioFile} of a file
+     * @return - the {@ComparableAudioFile}, or null if the file is too short
+     *         to be matched
+     */
+    public static ComparableAudioFile join(
+            CompletableFuture<ComparableAudioFile> f) {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * This method takes a single {@AudioFile} and returns a future of the
+     * {@ComparableAudioFile} that encapsulates the given file, as made by
+     * {@link #makeComparableAudioFile}. The segments of the file are
+     * published by an {@AudioFilePublisher} on the given executor to a
+     * {@FingerprintSubscriber}, so the thread calling this method is not
+     * blocked, not even by the decoding of a compressed file, and the threads
+     * of the executor are shared by all the files being analyzed
+     * 
+     * @param af - an {@AudioFile} to be analyzed
+     * @param executor - executor on which the file is read and analyzed
+     * @return - a future of the {@ComparableAudioFile} for the given file,
+     *         completed with null if the file is too short to be matched
+     */
+    public static CompletableFuture<ComparableAudioFile>
+            makeComparableAudioFileAsync(
+                    final AudioFile af,
+                    final Executor executor) {
+        // the duration of a compressed file is known once it is decoded,
+        // which is waited for on the executor as well
+        return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
+            public Boolean get() {
+                return isTooShort(af);
+            }
+        }, executor).thenCompose(
+                new Function<Boolean, CompletionStage<ComparableAudioFile>>() {
+                    public CompletionStage<ComparableAudioFile> apply(
+                            Boolean tooShort) {
+                        if (tooShort) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        return publish(af, executor);
+                    }
+                });
+    }
+
+    /**
+     * Publishes the segments of the given file on the given executor to a
+     * {@FingerprintSubscriber}. The segments are read ahead by a
+     * {@PrefetchingAudioFile}, so that the reading and the decoding of the
+     * file overlap with the analysis of the segments read earlier, as they
+     * do when a file is analyzed by {@link #makeComparableAudioFile}
+     * 
+     * @return - a future of the {@ComparableAudioFile} for the given file
+     */
+    private static CompletableFuture<ComparableAudioFile> publish(
+            AudioFile af,
+            Executor executor) {
+        FingerprintSubscriber subscriber =
+                new FingerprintSubscriber(makeIncremental(af.getShortName()));
+        new PrefetchingAudioFile(af, STREAMING_LENGTH).publisher(executor,
+                STREAMING_LENGTH).subscribe(subscriber);
+        return subscriber.getResult().thenApply(
+                new Function<ComparableAudioFile, ComparableAudioFile>() {
+                    public ComparableAudioFile apply(ComparableAudioFile as) {
+                        return moveOffHeap(as);
+                    }
+                });
+    }
+
+    /**
+     * This method takes a single {@AudioFile} and returns a
+     * {@ComparableAudioFile} that encapsulates the given file, named after
+     * the short name of the file. If the duration of the audio file is less
+     * than the minimum duration needed for a match, returns a null. If an
+     * {@OffHeapFingerprintIndex} is set, the fingerprint is moved into it and
+     * the instance returned holds only a view of it
+     * 
+     * @param af - an {@AudioFile} to be analyzed
+     * @return - {@ComparableAudioFile} for the given file, or null if the
+     *         file is too short to be matched
+     */
+    public static ComparableAudioFile makeComparableAudioFile(AudioFile af) {
+        // If the duration of the audio file is less than minimum duration
+        // needed for a match, the file is skipped
+        if (isTooShort(af)) {
+            return null;
+        }
+        ComparableAudioFile as = make(af);
+        as.setFileName(af.getShortName());
+        return moveOffHeap(as);
+    }
+
+    /**
+     * Moves the fingerprint of the given instance into the
+     * {@OffHeapFingerprintIndex}, if one is set, or else into the
+     * {@FingerprintSpillStore}, if one is set
+     * 
+     * @param as - {@ComparableAudioFile} whose fingerprint is computed
+     * @return - an instance holding only a view of, or a handle to, the moved
+     *         fingerprint, or the given instance if neither is set
+     */
+    private static ComparableAudioFile moveOffHeap(ComparableAudioFile as) {
+        if (offHeapIndex == null && spillStore == null) {
+            return as;
+        }
+        ComparableAudioFile moved =
+                offHeapIndex != null ? new ComparableAudioFileOffHeap(
+                        offHeapIndex.add(as)) : new ComparableAudioFileSpilled(
+                        spillStore, spillStore.add(as));
+        // the sub-fingerprints are moved along with the fingerprint
+        moved.setFileName(as.getFileName());
+        return moved;
+    }
+
+    /**
+     * static factory method to make a {@ComparableAudioFile} for another
+     * name of an audio file that has been analyzed, such as a copy of the
+     * file, sharing the fingerprint of the given instance
+     * 
+     * @param as - {@ComparableAudioFile} of the analyzed file
+     * @param name - the other name of the file
+     * @return {@ComparableAudioFile} named after the given name
+     */
+    public static ComparableAudioFile alias(
+            ComparableAudioFile as,
+            String name) {
+        ComparableAudioFile alias = new ComparableAudioFileAlias(as);
+        alias.setFileName(name);
+        alias.shareSubFingerprints(as);
+        return alias;
+    }
+
+    /**
+     * @return - the instance aliased by the given instance, or the given
+     *         instance if it is not an alias
+     */
+    private static ComparableAudioFile aliased(ComparableAudioFile as) {
+        return as instanceof ComparableAudioFileAlias
+                ? ((ComparableAudioFileAlias) as).target : as;
+    }
+
+    /**
+     * static factory method to make a {@ComparableAudioFile} for a file that
+     * is not analyzed, as it is compared with names of the same file only,
+     * which are matched without being compared as described in
+     * {@link #isIdenticalPair}
+     * 
+     * @param name - name of the file
+     * @return {@ComparableAudioFile} without a fingerprint
+     */
+    public static ComparableAudioFile makeUnanalyzed(String name) {
+        configure();
+        ComparableAudioFile as = new ComparableAudioFileUnanalyzed();
+        as.setFileName(name);
+        return as;
+    }
+
     /**
      * static factory method to make new {@ComparableAudioFile
      * 
@@ -87,11 +412,329 @@ public class ComparableAudioFiles {
      *         perceptual comparison of the given audio file
      */
     public static ComparableAudioFile make(AudioFile audioFile) {
+        ComparableAudioFile as;
         if (MODES.FAST == mode) {
-            return new ComparableAudioFileImplForFastMatch(audioFile);
+            as = new ComparableAudioFileImplForFastMatch();
+        } else if (MODES.LOWRATE == mode) {
+            as = new ComparableAudioFileImplForLowRate();
         } else {
-            return new ComparableAudioFileImpl(audioFile);
+            as = new ComparableAudioFileImpl();
+        }
+        appendAll(audioFile, as);
+        return as;
+    }
+
+    /**
+     * Updates the fingerprint of the given {@ComparableAudioFile} with all the
+     * samples of the given file, by breaking it down to streaming chunks. The
+     * chunks are read ahead by a {@PrefetchingAudioFile} while the earlier
+     * ones are analyzed, and its reader thread is stopped and the file closed
+     * even if the analysis fails
+     * 
+     * @param audioFile - an {@AudioFile} to be analyzed
+     * @param as - {@ComparableAudioFile} whose fingerprint is to be updated
+     */
+    private static void appendAll(AudioFile audioFile, ComparableAudioFile as) {
+        AudioFile source =
+                new PrefetchingAudioFile(audioFile, STREAMING_LENGTH);
+        try {
+            while (source.hasNext()) {
+                as.appendSamples(source.getNext(STREAMING_LENGTH));
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * static factory method to make a {@ComparableAudioFile} whose
+     * fingerprint is updated incrementally, through
+     * {@ComparableAudioFile#appendSamples}, from an unbounded stream of audio.
+     * The implementation chosen is dependent on the mode instance variable
+     * 
+     * @param name - name used to refer to the stream
+     * @return {@ComparableAudioFile} with an empty fingerprint
+     */
+    public static ComparableAudioFile makeIncremental(String name) {
+        ComparableAudioFile as;
+        if (MODES.FAST == mode) {
+            as = new ComparableAudioFileImplForFastMatch();
+        } else if (MODES.LOWRATE == mode) {
+            as = new ComparableAudioFileImplForLowRate();
+        } else {
+            as = new ComparableAudioFileImpl();
+        }
+        as.setFileName(name);
+        return as;
+    }
+
+    /**
+     * static factory method to make a {@ComparableAudioFile} for a track of a
+     * {@FingerprintCatalog}. The fingerprint of the track is mapped from the
+     * catalog when it is used for the first time
+     * 
+     * @param catalog - the {@FingerprintCatalog} containing the track
+     * @param trackIdx - index of the track in the catalog
+     * @return {@ComparableAudioFile} for the given track
+     */
+    public static ComparableAudioFile makeFromCatalog(
+            FingerprintCatalog catalog,
+            int trackIdx) {
+        configure();
+        return new ComparableAudioFileFromCatalog(catalog, trackIdx);
+    }
+
+    /**
+     * Configures the comparison parameters for the current mode, as no audio
+     * file of that mode may have been analyzed so far
+     */
+    private static void configure() {
+        if (MODES.FAST == mode) {
+            ComparableAudioFileImplForFastMatch.configure();
+        } else if (MODES.LOWRATE == mode) {
+            ComparableAudioFileImplForLowRate.configure();
+        } else {
+            ComparableAudioFileImpl.configure();
+        }
+    }
+
+    /**
+     * @return - true if the fingerprints are computed by the MAXPEAK
+     *         strategy, whose matches need thresholds of their own, as the
+     *         strongest bins of nearby frames are often the same and their
+     *         sub-fingerprints collide by chance far more than those of BARK
+     */
+    private static boolean isMaxPeak() {
+        return SubFingerprintHashers.TYPES.MAXPEAK == SubFingerprintHashers
+                .getType();
+    }
+
+    /**
+     * This implementation is used for representing a fingerprint that was
+     * computed earlier and stored in a {@FingerprintCatalog}
+     * 
+     */
+    private static class ComparableAudioFileFromCatalog extends
+            ComparableAudioFile {
+
+        private FingerprintCatalog catalog;
+        private int trackIdx;
+        private FingerprintCatalog.MappedFingerprint fingerprint;
+
+        // Constructor
+        private ComparableAudioFileFromCatalog(
+                FingerprintCatalog catalog,
+                int trackIdx) {
+            this.catalog = catalog;
+            this.trackIdx = trackIdx;
+        }
+
+        /**
+         * Getter to get the fingerprint of the track encapsulated by this
+         * instance, maps the track on first use. Synchronized as the
+         * instance may be compared on several threads
+         */
+        @Override
+        public synchronized Map<Integer, List<Integer>> getFingerprint() {
+            if (fingerprint == null) {
+                fingerprint = catalog.getFingerprint(trackIdx);
+            }
+            return fingerprint;
+        }
+
+        /**
+         * @return - the number of frames of the track, as stored in the
+         *         catalog
+         */
+        @Override
+        public int getFrameCount() {
+            return ((FingerprintCatalog.MappedFingerprint) getFingerprint())
+                    .getFrameCount();
+        }
+
+        /**
+         * @return - file name of the track, as stored in the catalog
+         */
+        @Override
+        public String getFileName() {
+            getFingerprint();
+            return fingerprint.getName();
+        }
+
+    }
+
+    /**
+     * This implementation is used for representing a fingerprint that was
+     * computed by another implementation and moved into an
+     * {@OffHeapFingerprintIndex}
+     * 
+     */
+    private static class ComparableAudioFileOffHeap extends
+            ComparableAudioFile {
+
+        private OffHeapFingerprintIndex.OffHeapFingerprint fingerprint;
+
+        // Constructor
+        private ComparableAudioFileOffHeap(
+                OffHeapFingerprintIndex.OffHeapFingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * Getter to get the view of the fingerprint held off the heap
+         */
+        @Override
+        public Map<Integer, List<Integer>> getFingerprint() {
+            return fingerprint;
         }
+
+        /**
+         * @return - the number of frames of the fingerprint
+         */
+        @Override
+        public int getFrameCount() {
+            return fingerprint.getFrameCount();
+        }
+
+        /**
+         * @return - the sub-fingerprints of the frames, read from the index
+         */
+        @Override
+        public int[] getSubFingerprints() {
+            return fingerprint.getSubFingerprints();
+        }
+
+        /**
+         * @return - the least reliable bits of the frames, read from the index
+         */
+        @Override
+        public int[] getWeakBits() {
+            return fingerprint.getWeakBits();
+        }
+
+    }
+
+    /**
+     * This implementation is used for representing a fingerprint kept by a
+     * {@FingerprintSpillStore}, which is paged in when it is used
+     * 
+     */
+    private static class ComparableAudioFileSpilled extends
+            ComparableAudioFile {
+
+        private FingerprintSpillStore store;
+        private FingerprintSpillStore.Handle handle;
+
+        // Constructor
+        private ComparableAudioFileSpilled(
+                FingerprintSpillStore store,
+                FingerprintSpillStore.Handle handle) {
+            this.store = store;
+            this.handle = handle;
+        }
+
+        /**
+         * Getter to get the fingerprint from the store
+         */
+        @Override
+        public Map<Integer, List<Integer>> getFingerprint() {
+            return store.get(handle);
+        }
+
+        /**
+         * @return - the number of frames of the fingerprint
+         */
+        @Override
+        public int getFrameCount() {
+            return handle.getFrameCount();
+        }
+
+        /**
+         * @return - the sub-fingerprints of the frames, from the store
+         */
+        @Override
+        public int[] getSubFingerprints() {
+            return store.getSubFingerprints(handle);
+        }
+
+        /**
+         * @return - the least reliable bits of the frames, from the store
+         */
+        @Override
+        public int[] getWeakBits() {
+            return store.getWeakBits(handle);
+        }
+
+    }
+
+    /**
+     * This implementation is used for representing another name of an audio
+     * file whose fingerprint is held by another implementation
+     * 
+     */
+    private static class ComparableAudioFileAlias extends ComparableAudioFile {
+
+        private ComparableAudioFile target;
+
+        // Constructor
+        private ComparableAudioFileAlias(ComparableAudioFile target) {
+            this.target = target;
+        }
+
+        /**
+         * Getter to get the fingerprint of the instance aliased
+         */
+        @Override
+        public Map<Integer, List<Integer>> getFingerprint() {
+            return target.getFingerprint();
+        }
+
+        /**
+         * @return - the number of frames of the instance aliased
+         */
+        @Override
+        public int getFrameCount() {
+            return target.getFrameCount();
+        }
+
+        /**
+         * @return - the sub-fingerprints of the instance aliased
+         */
+        @Override
+        public int[] getSubFingerprints() {
+            return target.getSubFingerprints();
+        }
+
+        /**
+         * @return - the least reliable bits of the instance aliased
+         */
+        @Override
+        public int[] getWeakBits() {
+            return target.getWeakBits();
+        }
+
+    }
+
+    /**
+     * This implementation is used for representing a file that is not
+     * analyzed, as it is compared with names of the same file only
+     * 
+     */
+    private static class ComparableAudioFileUnanalyzed extends
+            ComparableAudioFile {
+
+        private static final String ERROR_NOT_ANALYZED =
+                "ERROR: The file %s was not analyzed";
+
+        /**
+         * The file has no fingerprint, raises an error
+         */
+        @Override
+        public Map<Integer, List<Integer>> getFingerprint() {
+            throw new RuntimeException(String.format(ERROR_NOT_ANALYZED,
+                    getFileName()));
+        }
+
     }
 
     /**
@@ -104,10 +747,12 @@ public class ComparableAudioFiles {
     private static class ComparableAudioFileImpl extends ComparableAudioFile {
 
         private static int half_sample_frame_size = SAMPLES_PER_FRAME / 2;
-        private static int three_quarter_sample_frame_size = SAMPLES_PER_FRAME
-                + half_sample_frame_size;
         private static int error_threshold = 8;
         private static double error_density = 4.3;
+        // thresholds calibrated for the sub-fingerprints of the MAXPEAK
+        // strategy, which collide by chance more often than those of BARK
+        private static int max_peak_error_threshold = 2;
+        private static double max_peak_error_density = 2.0;
         private static int frame_count_for_5_seconds = 140;
         private static double offset_in_seconds = ((double) SAMPLES_PER_FRAME)
                 / (2 * 44100.0);
@@ -116,30 +761,34 @@ public class ComparableAudioFiles {
         // a
         // given FFT size and a given length of analysis frame
         static {
+            configure();
+        }
+
+        private static void configure() {
+            boolean maxPeak = isMaxPeak();
             ComparableAudioFile.initialize(FFT_WINDOW_SIZE, SAMPLES_PER_FRAME,
-                    SAMPLES_PER_FRAME, error_density, error_threshold,
+                    SAMPLES_PER_FRAME,
+                    maxPeak ? max_peak_error_density : error_density,
+                    maxPeak ? max_peak_error_threshold : error_threshold,
                     frame_count_for_5_seconds, offset_in_seconds);
         }
 
-        private AudioFile audioFile;
         private Map<Integer, List<Integer>> fingerprint =
                 new HashMap<Integer, List<Integer>>();
-        private double[] overlap;
+        private FrameSource frames = newFrameSource(half_sample_frame_size);
+        private double[] input = new double[FFT_WINDOW_SIZE];
         private int counter = 0;
 
         // Constructor
-        private ComparableAudioFileImpl(AudioFile audioFile) {
-            this.audioFile = audioFile;
-            computeFingerprint();
+        private ComparableAudioFileImpl() {
         }
 
-        private void computeFingerprint() {
-            int streamingLength = SAMPLES_PER_FRAME * 32;
-            while (audioFile.hasNext()) {
-                computeFingerprintForStreamedChunk(audioFile
-                        .getNext(streamingLength));
-            }
-            audioFile.close();
+        /**
+         * Updates the fingerprint with the next segment of a stream
+         */
+        @Override
+        public void appendSamples(double[] samples) {
+            computeFingerprintForStreamedChunk(samples);
         }
 
         /**
@@ -148,38 +797,17 @@ public class ComparableAudioFiles {
          * individual analysis frames. The method computes FFT for these
          * analysis frames with 50% overlap, and updates the fingerprint of
          * each of these frames to the main fingerprint corresponding to the
-         * source audio file encapsulated by this instance
+         * source audio file encapsulated by this instance. The samples at the
+         * end of the segment that do not complete a frame are retained by the
+         * frame source for the next segment
          * 
          * @param data - A segment of audio samples belonging to this instance
          *            for which the fingerprint is to be updated
          * 
          */
         private void computeFingerprintForStreamedChunk(double[] data) {
-            double[] input = new double[FFT_WINDOW_SIZE];
-
-            // appends the overlapping component from the previous segment to
-            // the beginning of the current segment
-            if (overlap != null) {
-                double[] newdata = new double[data.length + SAMPLES_PER_FRAME];
-                System.arraycopy(overlap, 0, newdata, 0, SAMPLES_PER_FRAME);
-                System.arraycopy(data, 0, newdata, SAMPLES_PER_FRAME,
-                        data.length);
-                data = newdata;
-            }
-            int slen = data.length - three_quarter_sample_frame_size;
-            for (int i = 0; i < slen;) {
-                applyHannWindow(data, input, i);
-                AcousticAnalyzer.updateFingerprintUsingAverageDeltaPowerDiff(
-                        performFFT(input), counter++, fingerprint);
-                applyHannWindow(data, input, i + half_sample_frame_size);
-                AcousticAnalyzer.updateFingerprintUsingAverageDeltaPowerDiff(
-                        performFFT(input), counter++, fingerprint);
-                i = i + SAMPLES_PER_FRAME;
-            }
-            // to retain the overlapping component for the next segment
-            overlap =
-                    Arrays.copyOfRange(data, data.length - SAMPLES_PER_FRAME,
-                            data.length);
+            counter = updateFingerprint(frames, data, input, counter,
+                    fingerprint);
         }
 
         /**
@@ -205,6 +833,9 @@ public class ComparableAudioFiles {
 
         private static int error_threshold = 8;
         private static double error_density = 8;
+        // thresholds of the MAXPEAK strategy for this mode
+        private static int max_peak_error_threshold = 4;
+        private static double max_peak_error_density = 2.0;
         private static int frame_count_for_5_seconds = 70;
         private static double offset_in_seconds =
                 ((double) SAMPLES_PER_FRAME) / 44100.0;
@@ -212,31 +843,34 @@ public class ComparableAudioFiles {
         // configures the ComparableAudioFile class, so that it can be used for
         // a given FFT size and a given length of analysis frame
         static {
+            configure();
+        }
+
+        private static void configure() {
+            boolean maxPeak = isMaxPeak();
             ComparableAudioFile.initialize(FFT_WINDOW_SIZE, SAMPLES_PER_FRAME,
-                    SAMPLES_PER_FRAME, error_density, error_threshold,
+                    SAMPLES_PER_FRAME,
+                    maxPeak ? max_peak_error_density : error_density,
+                    maxPeak ? max_peak_error_threshold : error_threshold,
                     frame_count_for_5_seconds, offset_in_seconds);
         }
 
-        private AudioFile audioFile;
         private Map<Integer, List<Integer>> fingerprint =
                 new HashMap<Integer, List<Integer>>();
+        private FrameSource frames = newFrameSource(SAMPLES_PER_FRAME);
+        private double[] input = new double[FFT_WINDOW_SIZE];
         private int counter = 0;
 
         // Constructor
-        private ComparableAudioFileImplForFastMatch(AudioFile audioFile) {
-            this.audioFile = audioFile;
-            computeFingerprint();
-        }
-
-        // helper method that updates the fingerprint for the encapsulated
-        // audio file on the fly by breaking it down to streaming chunks
-        private void computeFingerprint() {
-            int streamingLength = SAMPLES_PER_FRAME * 32;
-            while (audioFile.hasNext()) {
-                computeFingerprintForStreamedChunk(audioFile
-                        .getNext(streamingLength));
-            }
-            audioFile.close();
+        private ComparableAudioFileImplForFastMatch() {
+        }
+
+        /**
+         * Updates the fingerprint with the next segment of a stream
+         */
+        @Override
+        public void appendSamples(double[] samples) {
+            computeFingerprintForStreamedChunk(samples);
         }
 
         /**
@@ -245,24 +879,114 @@ public class ComparableAudioFiles {
          * individual analysis frames. The method computes FFT for these
          * analysis frames with no overlap, and updates the fingerprint of each
          * of these frames to the main fingerprint corresponding to the source
-         * audio file encapsulated by this instance
+         * audio file encapsulated by this instance. The samples at the end of
+         * the segment that do not complete a frame are retained by the frame
+         * source for the next segment
          * 
          * @param data - A segment of audio samples belonging to this instance
          *            for which the fingerprint is to be updated
          * 
          */
         private void computeFingerprintForStreamedChunk(double[] data) {
-            double[] input = new double[FFT_WINDOW_SIZE];
-            int slen = data.length;
-            int ignore = slen % SAMPLES_PER_FRAME;
-            slen = slen - ignore;
-            for (int i = 0; i < slen;) {
-                applyHannWindow(data, input, i);
-                AcousticAnalyzer.updateFingerprintUsingAverageDeltaPowerDiff(
-                        performFFT(input), counter++, fingerprint);
-                i = i + SAMPLES_PER_FRAME;
-            }
+            counter = updateFingerprint(frames, data, input, counter,
+                    fingerprint);
+        }
+
+        /**
+         * Getter to get the fingerprint of audio file encapsulated by this
+         * instance
+         */
+        @Override
+        public Map<Integer, List<Integer>> getFingerprint() {
+            return this.fingerprint;
+        }
+
+    }
 
+    /**
+     * This implementation is used for representing audio samples in way that
+     * facilitates perceptual comparison of segments that are 5 seconds or
+     * longer, in the same way as the default implementation. The audio is
+     * low pass filtered and decimated by DECIMATION_FACTOR before it is
+     * analyzed, and the analysis frames and the FFT are smaller by the same
+     * factor. As the width of an FFT bin is unchanged (44100 / 2048 =
+     * 11025 / 512 Hz), the Bark bands are computed from the same bins, while
+     * the cost of the analysis drops by a factor of four or more. The filter
+     * is flat up to 4 kHz and attenuates by more than 85 dB whatever would
+     * alias below 2.7 kHz. The frames start 882 / DECIMATION_FACTOR samples
+     * apart, a fraction of a sample, so that they stay aligned with those of
+     * the normal mode, and the sub-fingerprints are those of the normal mode
+     * but for rounding
+     * 
+     */
+    private static class ComparableAudioFileImplForLowRate extends
+            ComparableAudioFile {
+
+        private static int samples_per_frame = SAMPLES_PER_FRAME
+                / DECIMATION_FACTOR;
+        private static int fft_window_size = FFT_WINDOW_SIZE
+                / DECIMATION_FACTOR;
+        private static int error_threshold = 8;
+        private static double error_density = 4.3;
+        // thresholds of the MAXPEAK strategy for this mode
+        private static int max_peak_error_threshold = 2;
+        private static double max_peak_error_density = 2.0;
+        private static int frame_count_for_5_seconds = 140;
+        private static double offset_in_seconds = ((double) SAMPLES_PER_FRAME)
+                / (2 * 44100.0);
+        // length of the anti-aliasing filter per output sample, and its cut
+        // off as a fraction of the reduced Nyquist frequency
+        private static int taps_per_phase = 24;
+        private static double cutoff = 0.96;
+
+        // configures the ComparableAudioFile class, so that it can be used for
+        // a given FFT size and a given length of analysis frame
+        static {
+            configure();
+        }
+
+        private static void configure() {
+            boolean maxPeak = isMaxPeak();
+            ComparableAudioFile.initialize(fft_window_size, samples_per_frame,
+                    samples_per_frame,
+                    maxPeak ? max_peak_error_density : error_density,
+                    maxPeak ? max_peak_error_threshold : error_threshold,
+                    frame_count_for_5_seconds, offset_in_seconds);
+        }
+
+        private Map<Integer, List<Integer>> fingerprint =
+                new HashMap<Integer, List<Integer>>();
+        private Decimator decimator = new Decimator(DECIMATION_FACTOR,
+                taps_per_phase, cutoff);
+        private FrameSource frames = newFrameSource(SAMPLES_PER_FRAME / 2,
+                DECIMATION_FACTOR);
+        private double[] input = new double[fft_window_size];
+        private int counter = 0;
+
+        // Constructor
+        private ComparableAudioFileImplForLowRate() {
+        }
+
+        /**
+         * Updates the fingerprint with the next segment of a stream
+         */
+        @Override
+        public void appendSamples(double[] samples) {
+            computeFingerprintForStreamedChunk(samples);
+        }
+
+        /**
+         * Decimates a segment of streamed audio and updates the acoustic
+         * fingerprint with the analysis frames of the decimated audio, with
+         * 50% overlap, after applying the Hanning window function to them
+         * 
+         * @param data - A segment of audio samples belonging to this instance
+         *            for which the fingerprint is to be updated
+         * 
+         */
+        private void computeFingerprintForStreamedChunk(double[] data) {
+            counter = updateFingerprint(frames, decimator.process(data),
+                    input, counter, fingerprint);
         }
 
         /**
@@ -0,0 +1,94 @@
+/**
+ * This class reduces the sampling rate of a continuous stream of audio
+ * samples by an integer factor. The stream is low pass filtered by a windowed
+ * sinc FIR filter, so that the frequencies above the reduced Nyquist
+ * frequency do not alias into the band that is analyzed, and only every
+ * factor'th filtered sample is computed. The samples needed by the filter
+ * from the previous segment of the stream are retained, so the segments may
+ * be of any length.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class Decimator {
+
+    private int factor;
+    private double[] taps;
+    // the last taps.length - 1 samples of the stream seen so far
+    private double[] history;
+    // index, within the next segment, of the next sample to be output
+    private int phase;
+    // the history followed by the segment being processed
+    private double[] buffer;
+
+    /**
+     * @param factor - the factor by which the sampling rate is reduced
+     * @param tapsPerPhase - length of the filter divided by the factor, the
+     *            longer the filter the sharper its cut off
+     * @param cutoff - cut off frequency of the filter, as a fraction of the
+     *            reduced Nyquist frequency
+     */
+    public Decimator(int factor, int tapsPerPhase, double cutoff) {
+        this.factor = factor;
+        int length = factor * tapsPerPhase - 1;
+        taps = new double[length];
+        history = new double[length - 1];
+        double fc = cutoff / (2 * factor);
+        int mid = (length - 1) / 2;
+        double sum = 0;
+        for (int n = 0; n < length; n++) {
+            // Blackman window
+            double w =
+                    0.42 - 0.5 * Math.cos(2 * Math.PI * n / (length - 1))
+                            + 0.08
+                            * Math.cos(4 * Math.PI * n / (length - 1));
+            double x = 2 * Math.PI * fc * (n - mid);
+            taps[n] = w * (n == mid ? 1 : Math.sin(x) / x);
+            sum = sum + taps[n];
+        }
+        // unity gain at DC
+        for (int n = 0; n < length; n++) {
+            taps[n] = taps[n] / sum;
+        }
+    }
+
+    /**
+     * Filters and decimates the next segment of the stream
+     *
+     * @param data - the next segment of audio samples
+     * @return - the samples at the reduced sampling rate that end within the
+     *         given segment
+     */
+    public double[] process(double[] data) {
+        int h = history.length;
+        // the samples preceding the segment followed by the segment, so that
+        // the filter reads a contiguous array
+        if (buffer == null || buffer.length != h + data.length) {
+            buffer = new double[h + data.length];
+        }
+        System.arraycopy(history, 0, buffer, 0, h);
+        System.arraycopy(data, 0, buffer, h, data.length);
+        int count =
+                phase < data.length ? (data.length - phase + factor - 1)
+                        / factor : 0;
+        double[] out = new double[count];
+        int half = taps.length / 2;
+        int n = h + phase;
+        for (int o = 0; o < count; o++, n += factor) {
+            // the filter is symmetric, so the samples sharing a coefficient
+            // are added before they are multiplied
+            int first = n - taps.length + 1;
+            double acc = taps[half] * buffer[first + half];
+            for (int k = 0; k < half; k++) {
+                acc = acc + taps[k] * (buffer[n - k] + buffer[first + k]);
+            }
+            out[o] = acc;
+        }
+        phase = n - h - data.length;
+        System.arraycopy(buffer, data.length, history, 0, h);
+        return out;
+    }
+
+}
@@ -0,0 +1,552 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This class reads and writes catalogs of fingerprints of
+ * {@ComparableAudioFile} in a compact, versioned binary format that is read
+ * directly from a memory-mapped file without deserializing the fingerprints
+ * into objects. All values are stored in big endian byte order.
+ *
+ * <pre>
+ * header:   magic (int), version (int), mode (int, the ordinal of the mode in
+ *           the low byte and of the sub-fingerprint hasher in the next),
+ *           track count (int), track offset table (track count x long)
+ * track:    name (short length + UTF-8 bytes), key count (int),
+ *           frame count (int), sorted keys (key count x int),
+ *           posting offset table ((key count + 1) x int),
+ *           postings (for every key: time count followed by the times in
+ *           ascending order, delta encoded, all as unsigned variable length
+ *           integers)
+ * </pre>
+ *
+ * Opening a catalog reads only its header, every track is mapped when its
+ * fingerprint is used for the first time. As the tracks are mapped read-only,
+ * the OS page cache holding them is shared between processes using the same
+ * catalog.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class FingerprintCatalog {
+
+    private static final int MAGIC = 0x44414D46;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final String INVALID_CATALOG =
+            "ERROR: The file %s is not a valid fingerprint catalog";
+    private static final String CATALOG_MODE_MISMATCH =
+            "ERROR: The catalog %s was created in %s mode";
+    private static final String CATALOG_HASHER_MISMATCH =
+            "ERROR: The catalog %s was created with the %s hasher";
+    private static final String ERROR_READING_CATALOG =
+            "ERROR: Error while reading the fingerprint catalog %s";
+
+    private String fileName;
+    private RandomAccessFile rf;
+    private FileChannel ch;
+    private ComparableAudioFiles.MODES mode;
+    private SubFingerprintHashers.TYPES hasher;
+    private long[] trackOffsets;
+    private long fileLength;
+
+    /**
+     * Writes the fingerprints of the given files to a catalog with the given
+     * file name, replacing the file if it exists
+     *
+     * @param fName - file name of the catalog
+     * @param files - list of {@ComparableAudioFile} to be stored
+     * @param mode - the {@ComparableAudioFiles.MODES} in which the
+     *            fingerprints were computed, with the current
+     *            {@SubFingerprintHashers.TYPES}
+     * @throws IOException
+     */
+    public static void write(
+            String fName,
+            List<ComparableAudioFile> files,
+            ComparableAudioFiles.MODES mode) throws IOException {
+        int trackCount = files.size();
+        long[] offsets = new long[trackCount];
+        long position = HEADER_SIZE + 8L * trackCount;
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(fName), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mode.ordinal()
+                    | SubFingerprintHashers.getType().ordinal() << 8);
+            out.writeInt(trackCount);
+            // the offset table is written once the size of every track is
+            // known
+            for (int i = 0; i < trackCount; i++) {
+                out.writeLong(0);
+            }
+            for (int i = 0; i < trackCount; i++) {
+                offsets[i] = position;
+                position += writeTrack(out, files.get(i));
+            }
+        } finally {
+            out.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(fName, "rw");
+        try {
+            raf.seek(HEADER_SIZE);
+            ByteBuffer table = ByteBuffer.allocate(8 * trackCount);
+            for (long offset : offsets) {
+                table.putLong(offset);
+            }
+            raf.write(table.array());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the section of a single track to the given stream
+     *
+     * @return - number of bytes written
+     */
+    private static long writeTrack(DataOutputStream out, ComparableAudioFile af)
+            throws IOException {
+        // trailing silent frames are not in the fingerprint
+        return writeTrack(out, af.getFileName(), af.getFingerprint(), af
+                .getFrameCount());
+    }
+
+    /**
+     * Writes the section of a single track, given its name, fingerprint and
+     * number of frames, to the given stream
+     *
+     * @return - number of bytes written
+     */
+    static long writeTrack(
+            DataOutputStream out,
+            String trackName,
+            Map<Integer, List<Integer>> fp,
+            int frameCount) throws IOException {
+        int keyCount = fp.size();
+        int[] keys = new int[keyCount];
+        int idx = 0;
+        for (int k : fp.keySet()) {
+            keys[idx++] = k;
+        }
+        Arrays.sort(keys);
+
+        // encodes the postings to find the offset of every key
+        int[] postingOffsets = new int[keyCount + 1];
+        ByteArrayBuilder postings = new ByteArrayBuilder();
+        int[] times = new int[16];
+        for (int i = 0; i < keyCount; i++) {
+            postingOffsets[i] = postings.size();
+            List<Integer> t = fp.get(keys[i]);
+            int n = t.size();
+            if (times.length < n) {
+                times = new int[Math.max(n, times.length << 1)];
+            }
+            for (int j = 0; j < n; j++) {
+                times[j] = t.get(j);
+            }
+            Arrays.sort(times, 0, n);
+            postings.writeVarInt(n);
+            int prev = 0;
+            for (int j = 0; j < n; j++) {
+                postings.writeVarInt(times[j] - prev);
+                prev = times[j];
+            }
+            if (n > 0) {
+                frameCount = Math.max(frameCount, times[n - 1] + 1);
+            }
+        }
+        postingOffsets[keyCount] = postings.size();
+
+        byte[] name = trackName.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(name.length);
+        out.write(name);
+        out.writeInt(keyCount);
+        out.writeInt(frameCount);
+        for (int k : keys) {
+            out.writeInt(k);
+        }
+        for (int o : postingOffsets) {
+            out.writeInt(o);
+        }
+        postings.writeTo(out);
+        return 2L + name.length + 8L + 4L * keyCount + 4L * (keyCount + 1)
+                + postings.size();
+    }
+
+    /**
+     * Opens the catalog with the given file name. Only the header of the
+     * catalog is read
+     *
+     * @param fName - file name of the catalog
+     * @return - the opened {@FingerprintCatalog}
+     * @throws IOException
+     */
+    public static FingerprintCatalog open(String fName) throws IOException {
+        return new FingerprintCatalog(fName);
+    }
+
+    // constructor
+    private FingerprintCatalog(String fName) throws IOException {
+        this.fileName = fName;
+        File f = new File(fName);
+        if (!f.isFile()) {
+            throw new RuntimeException(String.format(
+                    AudioFile.INVALID_FILE_PATH, fName));
+        }
+        rf = new RandomAccessFile(f, "r");
+        ch = rf.getChannel();
+        fileLength = ch.size();
+        if (fileLength < HEADER_SIZE) {
+            close();
+            throw new RuntimeException(String.format(INVALID_CATALOG, fName));
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ch.read(header, 0);
+        header.flip();
+        int modeOrdinal;
+        int hasherOrdinal;
+        int trackCount;
+        if (header.getInt() != MAGIC || header.getInt() != VERSION
+                || (modeOrdinal = header.getInt()) < 0
+                || (hasherOrdinal = modeOrdinal >> 8)
+                        >= SubFingerprintHashers.TYPES.values().length
+                || (modeOrdinal = modeOrdinal & 0xFF)
+                        >= ComparableAudioFiles.MODES.values().length
+                || (trackCount = header.getInt()) < 0
+                || HEADER_SIZE + 8L * trackCount > fileLength) {
+            close();
+            throw new RuntimeException(String.format(INVALID_CATALOG, fName));
+        }
+        mode = ComparableAudioFiles.MODES.values()[modeOrdinal];
+        hasher = SubFingerprintHashers.TYPES.values()[hasherOrdinal];
+        trackOffsets = new long[trackCount];
+        if (trackCount > 0) {
+            MappedByteBuffer table =
+                    ch.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                            8L * trackCount);
+            for (int i = 0; i < trackCount; i++) {
+                trackOffsets[i] = table.getLong();
+            }
+        }
+    }
+
+    /**
+     * Makes a list of {@ComparableAudioFile} for all the tracks in the
+     * catalog. The fingerprint of every track is mapped when it is used for
+     * the first time. The catalog must have been created in the same mode, and
+     * with the same sub-fingerprint hasher, as the one the program is
+     * executing with
+     *
+     * @param currentMode - the {@ComparableAudioFiles.MODES} the program is
+     *            executing in
+     * @return - list of {@ComparableAudioFile}, one per track
+     */
+    public List<ComparableAudioFile> makeListOfComparableAudioFile(
+            ComparableAudioFiles.MODES currentMode) {
+        if (mode != currentMode) {
+            throw new RuntimeException(String.format(CATALOG_MODE_MISMATCH,
+                    fileName, mode));
+        }
+        if (hasher != SubFingerprintHashers.getType()) {
+            throw new RuntimeException(String.format(CATALOG_HASHER_MISMATCH,
+                    fileName, hasher));
+        }
+        List<ComparableAudioFile> asl =
+                new ArrayList<ComparableAudioFile>(trackOffsets.length);
+        for (int i = 0; i < trackOffsets.length; i++) {
+            asl.add(ComparableAudioFiles.makeFromCatalog(this, i));
+        }
+        return asl;
+    }
+
+    /**
+     * @return - the number of tracks in the catalog
+     */
+    public int size() {
+        return trackOffsets.length;
+    }
+
+    /**
+     * Maps the fingerprint of the track at the given index
+     *
+     * @param trackIdx - index of the track in the catalog
+     * @return - a read-only view of the fingerprint of the track
+     */
+    public MappedFingerprint getFingerprint(int trackIdx) {
+        long start = trackOffsets[trackIdx];
+        long end =
+                trackIdx + 1 < trackOffsets.length ? trackOffsets[trackIdx + 1]
+                        : fileLength;
+        if (start < HEADER_SIZE || end > fileLength || end <= start
+                || end - start > Integer.MAX_VALUE) {
+            throw new RuntimeException(String.format(INVALID_CATALOG,
+                    fileName));
+        }
+        try {
+            return new MappedFingerprint(ch.map(FileChannel.MapMode.READ_ONLY,
+                    start, end - start));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format(ERROR_READING_CATALOG,
+                    fileName));
+        }
+    }
+
+    /**
+     * Makes a read-only view of the fingerprint of a track held in the given
+     * buffer, as written by writeTrack
+     *
+     * @param buf - buffer holding exactly the section of the track
+     * @return - a read-only view of the fingerprint of the track
+     */
+    static MappedFingerprint readTrack(ByteBuffer buf) {
+        return new MappedFingerprint(buf);
+    }
+
+    /**
+     * Closes the catalog file. The tracks that have already been mapped
+     * remain readable
+     */
+    public void close() {
+        try {
+            ch.close();
+            rf.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+
+    /**
+     * A read-only {@Map} view of the fingerprint of a single track of a
+     * catalog. The keys are located by a binary search of the sorted keys and
+     * the times of a key are decoded every time they are requested, nothing is
+     * copied out of the mapped buffer in advance.
+     */
+    public static class MappedFingerprint extends
+            AbstractMap<Integer, List<Integer>> {
+
+        private ByteBuffer buf;
+        private String name;
+        private int keyCount;
+        private int frameCount;
+        private int keysIdx;
+        private int offsetsIdx;
+        private int postingsIdx;
+
+        private MappedFingerprint(ByteBuffer buf) {
+            this.buf = buf;
+            int nameLength = buf.getShort(0) & 0xFFFF;
+            byte[] nameBytes = new byte[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                nameBytes[i] = buf.get(2 + i);
+            }
+            name = new String(nameBytes, StandardCharsets.UTF_8);
+            int idx = 2 + nameLength;
+            keyCount = buf.getInt(idx);
+            frameCount = buf.getInt(idx + 4);
+            keysIdx = idx + 8;
+            offsetsIdx = keysIdx + 4 * keyCount;
+            postingsIdx = offsetsIdx + 4 * (keyCount + 1);
+        }
+
+        /**
+         * @return - the file name of the track
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return - the number of frames of the track
+         */
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * @return - index of the given key among the sorted keys, or -1 if
+         *         the key is not present
+         */
+        private int indexOf(int key) {
+            int lo = 0, hi = keyCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int k = buf.getInt(keysIdx + 4 * mid);
+                if (k < key) {
+                    lo = mid + 1;
+                } else if (k > key) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Decodes the times of the key at the given index
+         */
+        private List<Integer> timesAt(int i) {
+            int[] pos =
+                    new int[] { postingsIdx + buf.getInt(offsetsIdx + 4 * i) };
+            int n = readVarInt(buf, pos);
+            int[] times = new int[n];
+            int prev = 0;
+            for (int j = 0; j < n; j++) {
+                prev = prev + readVarInt(buf, pos);
+                times[j] = prev;
+            }
+            return new IntArrayList(times);
+        }
+
+        @Override
+        public List<Integer> get(Object key) {
+            if (!(key instanceof Integer)) {
+                return null;
+            }
+            int i = indexOf((Integer) key);
+            return i < 0 ? null : timesAt(i);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && indexOf((Integer) key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return keyCount;
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, List<Integer>>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, List<Integer>>>() {
+                @Override
+                public Iterator<Map.Entry<Integer, List<Integer>>> iterator() {
+                    return new Iterator<Map.Entry<Integer, List<Integer>>>() {
+                        private int i = 0;
+
+                        public boolean hasNext() {
+                            return i < keyCount;
+                        }
+
+                        public Map.Entry<Integer, List<Integer>> next() {
+                            if (i >= keyCount) {
+                                throw new NoSuchElementException();
+                            }
+                            final int idx = i++;
+                            return new Map.Entry<Integer, List<Integer>>() {
+                                public Integer getKey() {
+                                    return buf.getInt(keysIdx + 4 * idx);
+                                }
+
+                                public List<Integer> getValue() {
+                                    return timesAt(idx);
+                                }
+
+                                public List<Integer> setValue(List<Integer> v) {
+                                    throw new UnsupportedOperationException();
+                                }
+                            };
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keyCount;
+                }
+            };
+        }
+    }
+
+    /**
+     * A read-only list view of a primitive int[]
+     */
+    private static class IntArrayList extends AbstractList<Integer> implements
+            CollisionTimeline.IntTimes {
+        private int[] values;
+
+        private IntArrayList(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return values[index];
+        }
+
+        public int getTime(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+    /**
+     * Reads an unsigned variable length integer at the position given by
+     * pos[0], and advances the position past it
+     */
+    private static int readVarInt(ByteBuffer buf, int[] pos) {
+        int value = 0, shift = 0, b;
+        do {
+            b = buf.get(pos[0]++);
+            value = value | ((b & 0x7F) << shift);
+            shift = shift + 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * A growable byte array used to encode the postings of a track
+     */
+    private static class ByteArrayBuilder {
+        private byte[] data = new byte[1024];
+        private int size = 0;
+
+        private void writeVarInt(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length << 1);
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value = value >>> 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.write(data, 0, size);
+        }
+    }
+
+}
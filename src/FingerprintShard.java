@@ -0,0 +1,148 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This program is a worker that holds one partition of the hash space of the
+ * sub-fingerprints computed by {@AcousticAnalyzer}. For every hash in its
+ * partition, the worker stores the postings (reference file id and time of
+ * occurrence) of all the reference files added to it, and answers lookups
+ * for a set of hashes with the corresponding postings. The worker is started
+ * and driven by a {@ShardedFingerprintIndex} over the loopback interface.
+ *
+ * The program is executed with a single optional argument, the port to listen
+ * on (0 or no argument to pick a free port). Once the worker is ready to
+ * accept a connection, it prints the port on the standard output.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class FingerprintShard {
+
+    // Commands understood by the worker
+    static final byte CMD_ADD = 1;
+    static final byte CMD_LOOKUP = 2;
+    static final byte CMD_SHUTDOWN = 3;
+
+    // postings for every hash in the partition, stored as consecutive pairs
+    // of (file id, time) in a growable int[], whose used length is stored in
+    // the first element
+    private Map<Integer, int[]> postings = new HashMap<Integer, int[]>();
+
+    public static void main(String args[]) {
+        int port = 0;
+        if (args.length > 0) {
+            port = Integer.parseInt(args[0]);
+        }
+        try {
+            ServerSocket server =
+                    new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+            System.out.println(server.getLocalPort());
+            System.out.flush();
+            Socket socket = server.accept();
+            server.close();
+            new FingerprintShard().serve(socket);
+            socket.close();
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Serves the commands sent by the coordinator over the given socket till
+     * a shutdown command is received or the connection is closed
+     *
+     * @param socket - connection to the coordinator
+     * @throws IOException
+     */
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                        socket.getInputStream(), 1 << 16));
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(
+                        socket.getOutputStream(), 1 << 16));
+        while (true) {
+            byte cmd;
+            try {
+                cmd = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            if (cmd == CMD_ADD) {
+                add(in);
+            } else if (cmd == CMD_LOOKUP) {
+                lookup(in, out);
+                out.flush();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the postings of a reference file in the format (file id, count,
+     * count x (hash, time)) and adds them to the partition
+     */
+    private void add(DataInputStream in) throws IOException {
+        int fileId = in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int hash = in.readInt();
+            int time = in.readInt();
+            int[] p = postings.get(hash);
+            if (p == null) {
+                p = new int[5];
+                p[0] = 1;
+                postings.put(hash, p);
+            } else if (p[0] + 2 > p.length) {
+                int[] np = new int[p.length << 1];
+                System.arraycopy(p, 0, np, 0, p[0]);
+                p = np;
+                postings.put(hash, p);
+            }
+            p[p[0]] = fileId;
+            p[p[0] + 1] = time;
+            p[0] = p[0] + 2;
+        }
+    }
+
+    /**
+     * Reads a set of hashes in the format (count, count x hash) and writes
+     * back, for every hash in the same order, the number of postings followed
+     * by the postings as (file id, time) pairs. The whole request is read
+     * before the response is written so that the coordinator never blocks on
+     * writing a request while the worker blocks on writing a response
+     */
+    private void lookup(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        int count = in.readInt();
+        int[] hashes = new int[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = in.readInt();
+        }
+        for (int i = 0; i < count; i++) {
+            int[] p = postings.get(hashes[i]);
+            if (p == null) {
+                out.writeInt(0);
+                continue;
+            }
+            out.writeInt((p[0] - 1) >> 1);
+            for (int j = 1; j < p[0]; j++) {
+                out.writeInt(p[j]);
+            }
+        }
+    }
+
+}
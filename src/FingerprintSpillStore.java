@@ -0,0 +1,337 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the fingerprints of {@ComparableAudioFile} on the heap
+ * within a budget of memory. Once the fingerprints held exceed the budget,
+ * the least recently used ones are spilled to a temporary file, in the
+ * compact form of a track of a {@FingerprintCatalog} followed by the
+ * sub-fingerprints and the least reliable bits of its frames, and their
+ * references are dropped. A spilled fingerprint is paged back in, in that
+ * compact form and along with the sub-fingerprints and the bits, the next
+ * time any of them is used, possibly spilling others in turn. A fingerprint
+ * is written to the file the first time it is spilled only, as it does not
+ * change.
+ *
+ * The memory held by a fingerprint is estimated from its number of keys and
+ * times when it is still in the form in which it was computed, and is the
+ * size of its compact form once it has been paged in, in both cases along
+ * with the size of the sub-fingerprints and of the bits. A fingerprint in use
+ * by a comparison when it is spilled stays on the heap till the comparison
+ * ends, so the memory held may exceed the budget by the fingerprints of the
+ * comparisons in progress.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class FingerprintSpillStore {
+
+    private static final String ERROR_SPILLING =
+            "ERROR: Error while spilling fingerprints to %s";
+    private static final String STORE_CLOSED =
+            "ERROR: The fingerprint spill store is closed";
+
+    // estimated bytes held by a key of a fingerprint in the form in which it
+    // is computed, a hash map of lists of boxed times, and by a time
+    private static final int BYTES_PER_KEY = 96;
+    private static final int BYTES_PER_TIME = 24;
+    // bytes held by an element of the sub-fingerprints or of the bits
+    private static final int BYTES_PER_FRAME = 4;
+
+    private long budget;
+    private long resident;
+    private long spilled;
+    private long pageIns;
+    private File file;
+    private RandomAccessFile rf;
+    private FileChannel ch;
+    // the fingerprints held on the heap, least recently used first
+    private LinkedHashMap<Handle, Handle> lru =
+            new LinkedHashMap<Handle, Handle>(16, 0.75f, true);
+
+    /**
+     * @param budget - the number of bytes of the heap the fingerprints may
+     *            hold
+     * @throws IOException
+     */
+    public FingerprintSpillStore(long budget) throws IOException {
+        if (budget <= 0) {
+            throw new RuntimeException("ERROR: Invalid memory budget");
+        }
+        this.budget = budget;
+        file = File.createTempFile("dam", ".spill");
+        file.deleteOnExit();
+        rf = new RandomAccessFile(file, "rw");
+        ch = rf.getChannel();
+    }
+
+    /**
+     * Takes the fingerprint of the given file into the store, along with
+     * the sub-fingerprints and the least reliable bits of its frames,
+     * spilling the least recently used fingerprints if the budget is exceeded
+     *
+     * @param af - {@ComparableAudioFile} whose fingerprint is held
+     * @return - the {@Handle} through which the fingerprint is read
+     */
+    public synchronized Handle add(ComparableAudioFile af) {
+        Map<Integer, List<Integer>> fp = af.getFingerprint();
+        long times = 0;
+        for (List<Integer> t : fp.values()) {
+            times += t.size();
+        }
+        int frameCount = af.getFrameCount();
+        int[] subFingerprints = af.getSubFingerprints();
+        int[] weakBits = af.getWeakBits();
+        if (weakBits != null && weakBits.length != frameCount) {
+            weakBits = Arrays.copyOf(weakBits, frameCount);
+        }
+        Handle h =
+                new Handle(af.getFileName(), frameCount, fp,
+                        BYTES_PER_KEY * (long) fp.size() + BYTES_PER_TIME
+                                * times);
+        h.subFingerprints = subFingerprints;
+        h.weakBits = weakBits;
+        h.bytes += BYTES_PER_FRAME * (long) subFingerprints.length;
+        if (weakBits != null) {
+            h.bytes += BYTES_PER_FRAME * (long) weakBits.length;
+        }
+        hold(h);
+        return h;
+    }
+
+    /**
+     * @param h - {@Handle} of a fingerprint of the store
+     * @return - the fingerprint, paged in if it was spilled
+     */
+    public synchronized Map<Integer, List<Integer>> get(Handle h) {
+        return pageIn(h).fingerprint;
+    }
+
+    /**
+     * @param h - {@Handle} of a fingerprint of the store
+     * @return - the sub-fingerprints of the frames of the fingerprint, paged
+     *         in with the fingerprint if it was spilled
+     */
+    public synchronized int[] getSubFingerprints(Handle h) {
+        return pageIn(h).subFingerprints;
+    }
+
+    /**
+     * @param h - {@Handle} of a fingerprint of the store
+     * @return - the positions of the least reliable bits of the frames of the
+     *         fingerprint, paged in with the fingerprint if it was spilled, or
+     *         null if they are not known
+     */
+    public synchronized int[] getWeakBits(Handle h) {
+        return pageIn(h).weakBits;
+    }
+
+    /**
+     * Pages in the fingerprint of the given handle, along with the
+     * sub-fingerprints and the bits of its frames, if it was spilled, and
+     * marks it as the most recently used
+     *
+     * @return - the given handle
+     */
+    private Handle pageIn(Handle h) {
+        if (ch == null) {
+            throw new RuntimeException(STORE_CLOSED);
+        }
+        if (h.fingerprint != null) {
+            lru.get(h);
+            return h;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(h.spillLength);
+        try {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, h.spillOffset + buf.position()) < 0) {
+                    throw new IOException();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format(ERROR_SPILLING, file));
+        }
+        buf.flip();
+        h.fingerprint = FingerprintCatalog.readTrack(buf);
+        buf.position(h.trackLength);
+        h.subFingerprints = readInts(buf);
+        h.weakBits = readInts(buf);
+        h.bytes = h.spillLength;
+        pageIns++;
+        hold(h);
+        return h;
+    }
+
+    /**
+     * @return - the number of bytes of the heap held by the fingerprints
+     *         that have not been spilled
+     */
+    public synchronized long getResidentBytes() {
+        return resident;
+    }
+
+    /**
+     * @return - the number of bytes written to the spill file
+     */
+    public synchronized long getSpilledBytes() {
+        return spilled;
+    }
+
+    /**
+     * @return - the number of times a spilled fingerprint was paged in
+     */
+    public synchronized long getPageIns() {
+        return pageIns;
+    }
+
+    /**
+     * Deletes the spill file, after which the spilled fingerprints can no
+     * longer be read
+     */
+    public synchronized void close() {
+        if (ch == null) {
+            return;
+        }
+        try {
+            ch.close();
+            rf.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+        ch = null;
+        file.delete();
+    }
+
+    /**
+     * Holds the given fingerprint on the heap, then spills the least recently
+     * used fingerprints other than it till the budget is met
+     */
+    private void hold(Handle h) {
+        lru.put(h, h);
+        resident += h.bytes;
+        Iterator<Handle> it = lru.keySet().iterator();
+        while (resident > budget && it.hasNext()) {
+            Handle victim = it.next();
+            if (victim == h) {
+                continue;
+            }
+            spill(victim);
+            it.remove();
+        }
+    }
+
+    /**
+     * Writes the fingerprint of the given handle to the spill file, unless it
+     * was written before, and drops its reference
+     */
+    private void spill(Handle h) {
+        if (h.spillOffset < 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                DataOutputStream out = new DataOutputStream(bytes);
+                FingerprintCatalog.writeTrack(out, h.name, h.fingerprint,
+                        h.frameCount);
+                h.trackLength = bytes.size();
+                writeInts(out, h.subFingerprints);
+                writeInts(out, h.weakBits);
+                ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                long offset = spilled;
+                while (buf.hasRemaining()) {
+                    ch.write(buf, offset + buf.position());
+                }
+                h.spillOffset = offset;
+                h.spillLength = buf.capacity();
+                spilled += h.spillLength;
+            } catch (IOException e) {
+                throw new RuntimeException(String.format(ERROR_SPILLING,
+                        file));
+            }
+        }
+        resident -= h.bytes;
+        h.fingerprint = null;
+        h.subFingerprints = null;
+        h.weakBits = null;
+    }
+
+    /**
+     * Writes the given array to the given stream, preceded by its length, or
+     * by -1 if it is null
+     */
+    private static void writeInts(DataOutputStream out, int[] values)
+            throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    /**
+     * Reads an array written by {@link #writeInts} from the given buffer
+     *
+     * @return - the array read, or null if it was null
+     */
+    private static int[] readInts(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0) {
+            return null;
+        }
+        int[] values = new int[n];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + 4 * n);
+        return values;
+    }
+
+    /**
+     * The reference to a fingerprint of the store, which may be on the heap
+     * or spilled
+     *
+     */
+    public static class Handle {
+        private String name;
+        private int frameCount;
+        private Map<Integer, List<Integer>> fingerprint;
+        private int[] subFingerprints;
+        private int[] weakBits;
+        private long bytes;
+        private long spillOffset = -1;
+        private int spillLength;
+        // length of the track within the spilled bytes, which are followed
+        // by the sub-fingerprints and the bits
+        private int trackLength;
+
+        private Handle(
+                String name,
+                int frameCount,
+                Map<Integer, List<Integer>> fingerprint,
+                long bytes) {
+            this.name = name;
+            this.frameCount = frameCount;
+            this.fingerprint = fingerprint;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return - the number of frames of the fingerprint
+         */
+        public int getFrameCount() {
+            return frameCount;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * This class computes the fingerprint of an incrementally updated
+ * {@ComparableAudioFile} from the segments of audio published to it, such as
+ * by an {@AudioFilePublisher}. It requests a few segments ahead of the one it
+ * is analyzing, and one more for every segment analyzed, so that the segments
+ * held in memory for a file stay bounded while the next ones are being read.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class FingerprintSubscriber implements Flow.Subscriber<double[]> {
+
+    // number of segments requested ahead of the analysis
+    private static final int SEGMENTS_AHEAD = 4;
+
+    private ComparableAudioFile target;
+    private Flow.Subscription subscription;
+    private CompletableFuture<ComparableAudioFile> result =
+            new CompletableFuture<ComparableAudioFile>();
+
+    /**
+     * @param target - {@ComparableAudioFile} whose fingerprint is updated
+     *            with the segments, as made by
+     *            {@ComparableAudioFiles#makeIncremental}
+     */
+    public FingerprintSubscriber(ComparableAudioFile target) {
+        this.target = target;
+    }
+
+    /**
+     * @return - a future completed with the {@ComparableAudioFile} once all
+     *         the segments have been analyzed, or with the error raised while
+     *         reading or analyzing them
+     */
+    public CompletableFuture<ComparableAudioFile> getResult() {
+        return result;
+    }
+
+    public void onSubscribe(Flow.Subscription s) {
+        subscription = s;
+        s.request(SEGMENTS_AHEAD);
+    }
+
+    public void onNext(double[] segment) {
+        try {
+            target.appendSamples(segment);
+        } catch (RuntimeException | Error e) {
+            // such as running out of memory, which would otherwise leave the
+            // result incomplete
+            subscription.cancel();
+            result.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    public void onError(Throwable t) {
+        result.completeExceptionally(t);
+    }
+
+    public void onComplete() {
+        result.complete(target);
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * This class splits a continuous stream of audio samples into analysis frames
+ * of a fixed size that start a fixed number of samples (the hop size) apart,
+ * irrespective of the lengths of the segments in which the samples are
+ * supplied. The samples are held in a ring buffer, so that the samples shared
+ * by consecutive frames are neither copied nor dropped at the boundary
+ * between two segments. The hop size may be a fraction, in which case each
+ * frame starts at the sample its start falls into, so that the frames do not
+ * drift away from those of a stream sampled at another rate.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class FrameSource {
+
+    private int frameSize;
+    // the hop size, as a fraction of samples
+    private int hopNumerator;
+    private int hopDenominator;
+    private int fftSize;
+    private double[] window;
+    private double[] ring;
+    private int mask;
+    // number of samples written to and the position of the first sample of
+    // the next frame in the stream
+    private long writePos;
+    private long readPos;
+    private long frameIndex;
+
+    /**
+     * @param frameSize - number of samples analyzed together as a frame
+     * @param hopSize - number of samples between the start of two consecutive
+     *            frames, may be smaller (overlapping frames) or larger
+     *            (samples in between are skipped) than the frame size
+     * @param window - the window function applied to every frame, of length
+     *            frameSize
+     * @param fftSize - the length of the frames returned, the samples after
+     *            the frame are padded with zeros
+     */
+    public FrameSource(
+            int frameSize,
+            int hopSize,
+            double[] window,
+            int fftSize) {
+        this(frameSize, hopSize, 1, window, fftSize);
+    }
+
+    /**
+     * @param frameSize - number of samples analyzed together as a frame
+     * @param hopNumerator - numerator of the number of samples between the
+     *            start of two consecutive frames
+     * @param hopDenominator - denominator of the number of samples between
+     *            the start of two consecutive frames
+     * @param window - the window function applied to every frame, of length
+     *            frameSize
+     * @param fftSize - the length of the frames returned, the samples after
+     *            the frame are padded with zeros
+     */
+    public FrameSource(
+            int frameSize,
+            int hopNumerator,
+            int hopDenominator,
+            double[] window,
+            int fftSize) {
+        this.frameSize = frameSize;
+        this.hopNumerator = hopNumerator;
+        this.hopDenominator = hopDenominator;
+        this.window = window;
+        this.fftSize = fftSize;
+        int capacity = Integer.highestOneBit(2 * frameSize - 1) << 1;
+        ring = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Writes as many of the given samples to the ring buffer as there is space
+     * for. The frames available must be read before the remaining samples can
+     * be written
+     *
+     * @param data - array containing the samples
+     * @param off - index of the first sample to be written
+     * @param len - number of samples to be written
+     * @return - number of samples consumed from the given array
+     */
+    public int write(double[] data, int off, int len) {
+        int consumed = 0;
+        // skips the samples between frames that are more than a frame apart
+        if (writePos < readPos) {
+            consumed = (int) Math.min(len, readPos - writePos);
+            writePos = writePos + consumed;
+        }
+        int free = ring.length - (int) (writePos - readPos);
+        int n = Math.min(len - consumed, free);
+        int start = (int) (writePos & mask);
+        int first = Math.min(n, ring.length - start);
+        System.arraycopy(data, off + consumed, ring, start, first);
+        System.arraycopy(data, off + consumed + first, ring, 0, n - first);
+        writePos = writePos + n;
+        return consumed + n;
+    }
+
+    /**
+     * @return - true if all the samples of the next frame have been written
+     */
+    public boolean hasFrame() {
+        return writePos - readPos >= frameSize;
+    }
+
+    /**
+     * Copies the next frame into the given array after applying the window
+     * function, pads it with zeros and moves to the following frame
+     *
+     * @param input - array of length fftSize into which the frame is copied
+     * @return - the RMS amplitude of the samples of the frame, before the
+     *         window function is applied
+     */
+    public double nextFrame(double[] input) {
+        int start = (int) (readPos & mask);
+        double energy = 0;
+        for (int j = 0; j < frameSize; j++) {
+            double sample = ring[(start + j) & mask];
+            energy = energy + sample * sample;
+            input[j] = sample * window[j];
+        }
+        for (int j = frameSize; j < fftSize; j++) {
+            input[j] = 0;
+        }
+        frameIndex++;
+        readPos = frameIndex * hopNumerator / hopDenominator;
+        return Math.sqrt(energy / frameSize);
+    }
+
+}
@@ -0,0 +1,104 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class identifies the sub-fingerprint hashes that are too common to
+ * indicate a match, such as the hashes of near silent frames or of frames
+ * without any dominant band, from the document frequency of every hash (the
+ * number of fingerprints in which it occurs) across all the fingerprints
+ * loaded. A hash that occurs in more than a given fraction of the
+ * fingerprints is stopped, and its collisions are ignored when matching, which
+ * bounds the size of the collision sets gathered for a pair of files.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class HashStopList {
+
+    // a hash shared by this many fingerprints or fewer is never stopped, as a
+    // hash common to just the two files being compared is what a match is
+    // made of
+    private static final int MIN_DOCUMENT_FREQUENCY = 2;
+
+    private double maxFraction;
+    private int documentCount;
+    private Map<Integer, int[]> documentFrequency =
+            new HashMap<Integer, int[]>();
+    // hashes stopped given the fingerprints counted so far, null if it must
+    // be recomputed
+    private volatile Set<Integer> stopped;
+
+    /**
+     * @param maxFraction - fraction of the fingerprints a hash may occur in
+     *            without being stopped
+     */
+    public HashStopList(double maxFraction) {
+        this.maxFraction = maxFraction;
+    }
+
+    /**
+     * Counts the hashes of the given fingerprint towards the document
+     * frequencies
+     *
+     * @param fingerprint - a fingerprint loaded for matching
+     */
+    public synchronized void count(Map<Integer, ?> fingerprint) {
+        for (int k : fingerprint.keySet()) {
+            int[] df = documentFrequency.get(k);
+            if (df == null) {
+                documentFrequency.put(k, new int[] { 1 });
+            } else {
+                df[0]++;
+            }
+        }
+        documentCount++;
+        stopped = null;
+    }
+
+    /**
+     * @param hash - a sub-fingerprint hash
+     * @return - true if the hash occurs in too many of the fingerprints
+     *         counted to be used for matching
+     */
+    public boolean isStopped(int hash) {
+        Set<Integer> s = stopped;
+        if (s == null) {
+            s = computeStopped();
+        }
+        return !s.isEmpty() && s.contains(hash);
+    }
+
+    /**
+     * @return - the number of hashes stopped
+     */
+    public int size() {
+        Set<Integer> s = stopped;
+        return s == null ? computeStopped().size() : s.size();
+    }
+
+    /**
+     * Finds the hashes whose document frequency exceeds the cap given the
+     * fingerprints counted so far
+     */
+    private synchronized Set<Integer> computeStopped() {
+        if (stopped != null) {
+            return stopped;
+        }
+        Set<Integer> s = new HashSet<Integer>();
+        int cap =
+                Math.max(MIN_DOCUMENT_FREQUENCY,
+                        (int) (maxFraction * documentCount));
+        for (Map.Entry<Integer, int[]> e : documentFrequency.entrySet()) {
+            if (e.getValue()[0] > cap) {
+                s.add(e.getKey());
+            }
+        }
+        stopped = s;
+        return s;
+    }
+
+}
@@ -0,0 +1,383 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class resolves the files given by the two path arguments of the
+ * program, each a file or a directory, to the distinct files they contain,
+ * so that a file given by both arguments, or twice by the same argument, is
+ * decoded and analyzed once only. Two inputs are the same file if their
+ * canonical paths are equal, which covers a directory given twice and a file
+ * reached through a link or through overlapping paths, or if their contents
+ * are identical, which covers copies of a file. The contents are compared
+ * through their size first, and through a hash of their bytes, computed by
+ * {@link #contentHash}, only for the inputs whose size is that of another.
+ *
+ * Each distinct file is analyzed once, and is then named in the lists of
+ * {@ComparableAudioFile} of the two arguments after every input resolved to
+ * it, the inputs with another name than the one analyzed sharing its
+ * fingerprint through {@ComparableAudioFiles#alias}. Two inputs resolved to
+ * the same file are matched without being compared, unless
+ * {@ComparableAudioFiles#setIdenticalFilesMatched} is set to false, so a
+ * file compared with inputs resolved to it only is not decoded nor
+ * analyzed: a WAVE file is read up to the end of its header, to check its
+ * format and its duration, and a compressed file is decoded, as its duration
+ * is not given by its header, but neither is analyzed.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class InputResolver {
+
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+    private static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long HASH_MULTIPLIER_1 = 0x87C37B91114253D5L;
+    private static final long HASH_MULTIPLIER_2 = 0x4CF5AD432745937FL;
+
+    // the inputs of the two arguments, in the order of the arguments
+    private List<Input> inputs = new ArrayList<Input>();
+    // the first input resolved to each distinct file
+    private List<Input> distinct = new ArrayList<Input>();
+    private ComparableAudioFile[] analyzed;
+
+    /**
+     * Lists the inputs given by the two path arguments and resolves them to
+     * distinct files
+     *
+     * @param flag1 - '-f' -> file, '-d' -> directory
+     * @param path1 - path name of the first argument
+     * @param flag2 - '-f' -> file, '-d' -> directory
+     * @param path2 - path name of the second argument
+     * @throws IOException
+     */
+    public InputResolver(String flag1, String path1, String flag2, String path2)
+            throws IOException {
+        addInputs(flag1, path1, 1);
+        addInputs(flag2, path2, 2);
+        resolve();
+    }
+
+    /**
+     * @return - the number of inputs given by the two arguments
+     */
+    public int getInputCount() {
+        return inputs.size();
+    }
+
+    /**
+     * @return - the number of distinct files the inputs are resolved to
+     */
+    public int getDistinctCount() {
+        return distinct.size();
+    }
+
+    /**
+     * Makes an {@AudioFile} for every distinct file and analyzes them
+     * together, as {@ComparableAudioFiles#makeListOfComparableAudioFile}
+     * does, except for the files compared with inputs resolved to them only
+     * when such inputs are matched without being compared. A file of a
+     * directory that cannot be read is reported, and is skipped, as by
+     * {@AudioFiles}, while a file given by the '-f' flag that cannot be read
+     * raises its error
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void analyze() throws IOException, InterruptedException {
+        boolean identicalMatched =
+                ComparableAudioFiles.isIdenticalFilesMatched();
+        int[][] counts = countPerArgument();
+        analyzed = new ComparableAudioFile[distinct.size()];
+        List<AudioFile> files = new ArrayList<AudioFile>();
+        List<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0; i < distinct.size(); i++) {
+            AudioFile af = open(distinct.get(i));
+            if (af == null) {
+                continue;
+            }
+            if (identicalMatched && isComparedWithCopiesOnly(i, counts)) {
+                // the file is checked to be long enough to be matched, as an
+                // analyzed file is, but is not analyzed
+                analyzed[i] =
+                        ComparableAudioFiles.isTooShort(af) ? null
+                                : ComparableAudioFiles.makeUnanalyzed(af
+                                        .getShortName());
+                af.close();
+                continue;
+            }
+            files.add(af);
+            indices.add(i);
+        }
+        ComparableAudioFile[] asa =
+                ComparableAudioFiles.makeArrayOfComparableAudioFile(files
+                        .toArray(new AudioFile[files.size()]));
+        for (int i = 0; i < asa.length; i++) {
+            analyzed[indices.get(i)] = asa[i];
+        }
+    }
+
+    /**
+     * Makes the list of {@ComparableAudioFile} of an argument from the files
+     * analyzed by {@link #analyze}, in the order of the inputs of the
+     * argument, skipping the files that could not be read or are too short to
+     * be matched. The same instance is returned for an input in both lists
+     *
+     * @param paramNum - 1 for the first argument, 2 for the second
+     * @return - list of {@ComparableAudioFile} of the argument
+     */
+    public List<ComparableAudioFile> makeListOfComparableAudioFile(
+            int paramNum) {
+        Map<String, ComparableAudioFile> aliases =
+                new HashMap<String, ComparableAudioFile>();
+        List<ComparableAudioFile> asl = new ArrayList<ComparableAudioFile>();
+        for (Input in : inputs) {
+            ComparableAudioFile as = analyzed[in.distinctIdx];
+            if (in.paramNum != paramNum || as == null) {
+                continue;
+            }
+            if (!in.name.equals(as.getFileName())) {
+                String key = in.distinctIdx + File.separator + in.name;
+                ComparableAudioFile alias = aliases.get(key);
+                if (alias == null) {
+                    alias = ComparableAudioFiles.alias(as, in.name);
+                    aliases.put(key, alias);
+                }
+                as = alias;
+            }
+            asl.add(as);
+        }
+        return asl;
+    }
+
+    /**
+     * Computes a hash of the bytes of the given file, reading it as a stream
+     * of 64 bit words, each mixed into the hash by multiplications and a
+     * rotation, which is fast enough to be bound by the reading of the file.
+     * The hash is not cryptographic, and is meant to tell apart files that
+     * differ, not to resist files crafted to collide
+     *
+     * @param f - file to be hashed
+     * @return - 64 bit hash of the bytes of the file
+     * @throws IOException
+     */
+    public static long contentHash(File f) throws IOException {
+        RandomAccessFile rf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel ch = rf.getChannel();
+            ByteBuffer buf =
+                    ByteBuffer.allocate(HASH_BUFFER_SIZE).order(
+                            ByteOrder.LITTLE_ENDIAN);
+            long h = HASH_SEED;
+            long length = 0;
+            int n;
+            while ((n = ch.read(buf)) >= 0) {
+                length += n;
+                buf.flip();
+                while (buf.remaining() >= 8) {
+                    h = mix(h, buf.getLong());
+                }
+                buf.compact();
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                h = mix(h, buf.get() & 0xFF);
+            }
+            h ^= length;
+            h ^= h >>> 33;
+            h *= HASH_MULTIPLIER_1;
+            h ^= h >>> 33;
+            return h;
+        } finally {
+            rf.close();
+        }
+    }
+
+    /**
+     * @return - the given hash with the given word mixed into it
+     */
+    private static long mix(long h, long word) {
+        h ^= Long.rotateLeft(word * HASH_MULTIPLIER_1, 31) * HASH_MULTIPLIER_2;
+        return Long.rotateLeft(h, 27) * 5 + 0x52DCE729;
+    }
+
+    /**
+     * Makes the {@AudioFile} of a distinct file. A file of a directory that
+     * cannot be read is reported, and is skipped, as by {@AudioFiles}, while
+     * a file given by the '-f' flag that cannot be read raises its error
+     *
+     * @return - {@AudioFile} of the file, or null if it cannot be read
+     */
+    private AudioFile open(Input in) throws IOException, InterruptedException {
+        try {
+            return AudioFiles.makeAudioFileByExtension(in.path, in.paramNum);
+        } catch (Exception e) {
+            if (isGivenAsFile(in.distinctIdx)) {
+                throw e;
+            }
+            System.err.println(e.getMessage());
+            dam.setErrorOccured();
+            return null;
+        }
+    }
+
+    /**
+     * @return - the number of inputs of each argument resolved to each
+     *         distinct file, indexed by the argument and then by the file,
+     *         along with the number of inputs of each argument, at the index
+     *         of the file after the last
+     */
+    private int[][] countPerArgument() {
+        int[][] counts = new int[2][distinct.size() + 1];
+        for (Input in : inputs) {
+            counts[in.paramNum - 1][in.distinctIdx]++;
+            counts[in.paramNum - 1][distinct.size()]++;
+        }
+        return counts;
+    }
+
+    /**
+     * @return - true if every input the given distinct file is compared with,
+     *         as an input of either argument, is resolved to the same file
+     */
+    private boolean isComparedWithCopiesOnly(int distinctIdx, int[][] counts) {
+        int total = distinct.size();
+        for (int arg = 0; arg < 2; arg++) {
+            int other = 1 - arg;
+            if (counts[arg][distinctIdx] > 0
+                    && counts[other][distinctIdx] < counts[other][total]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the inputs given by a path argument
+     */
+    private void addInputs(String flag, String path, int paramNum)
+            throws IOException {
+        if ("-f".equals(flag)) {
+            inputs.add(new Input(path, paramNum, true));
+        } else {
+            for (String f : AudioFiles.listDirectory(path)) {
+                inputs.add(new Input(f, paramNum, false));
+            }
+        }
+    }
+
+    /**
+     * Resolves every input to a distinct file, first by canonical path, then
+     * by content among the inputs of the same size
+     */
+    private void resolve() {
+        Map<String, Input> byPath = new HashMap<String, Input>();
+        Map<Long, List<Input>> bySize = new HashMap<Long, List<Input>>();
+        for (Input in : inputs) {
+            Input first = byPath.get(in.canonicalPath);
+            if (first == null) {
+                byPath.put(in.canonicalPath, in);
+                first = in;
+                // an input that is not a readable file is left on its own,
+                // to raise its error when it is read
+                if (in.size > 0) {
+                    first = sameContent(in, bySize);
+                }
+            }
+            if (first == in) {
+                in.distinctIdx = distinct.size();
+                distinct.add(in);
+            } else {
+                in.distinctIdx = first.distinctIdx;
+            }
+        }
+    }
+
+    /**
+     * @return - the first input of the given size whose content is identical
+     *         to that of the given input, or the given input if there is none
+     */
+    private static Input sameContent(
+            Input in,
+            Map<Long, List<Input>> bySize) {
+        List<Input> same = bySize.get(in.size);
+        if (same == null) {
+            same = new ArrayList<Input>();
+            bySize.put(in.size, same);
+        }
+        try {
+            for (Input other : same) {
+                if (other.getHash() == in.getHash()) {
+                    return other;
+                }
+            }
+        } catch (IOException e) {
+            // a file that cannot be read is left on its own, to raise its
+            // error when it is read
+            return in;
+        }
+        same.add(in);
+        return in;
+    }
+
+    /**
+     * @return - true if any input resolved to the given distinct file is
+     *         given by the '-f' flag
+     */
+    private boolean isGivenAsFile(int distinctIdx) {
+        for (Input in : inputs) {
+            if (in.distinctIdx == distinctIdx && in.givenAsFile) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A file given by a path argument, either directly or as a file of a
+     * directory
+     *
+     */
+    private static class Input {
+        private String path;
+        private String name;
+        private String canonicalPath;
+        private long size;
+        private int paramNum;
+        private boolean givenAsFile;
+        private boolean hashed;
+        private long hash;
+        private int distinctIdx;
+
+        private Input(String path, int paramNum, boolean givenAsFile)
+                throws IOException {
+            File f = new File(path);
+            this.path = path;
+            this.name = f.getName();
+            this.canonicalPath = f.getCanonicalPath();
+            this.size = f.isFile() && f.canRead() ? f.length() : -1;
+            this.paramNum = paramNum;
+            this.givenAsFile = givenAsFile;
+        }
+
+        /**
+         * @return - the hash of the content of the file, computed once
+         */
+        private long getHash() throws IOException {
+            if (!hashed) {
+                hash = contentHash(new File(path));
+                hashed = true;
+            }
+            return hash;
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class computes the keys of a fingerprint from pairs of spectral peaks
+ * (landmarks), in the manner of "An Industrial-Strength Audio Search
+ * Algorithm" by Avery Wang. The strongest local maxima of the magnitude of
+ * every frame form a constellation, and every peak (the anchor) is paired
+ * with the nearest peaks of the following frames within a target zone. The
+ * key of a pair combines the bins of the two peaks and the number of frames
+ * between them, and is anchored at the time of the first peak.
+ *
+ * A key therefore describes a part of the spectrum over several frames and is
+ * far more selective than a hash of a single frame, so the lists of times of
+ * the keys are short. The sub-fingerprint of every frame is the hash of the
+ * deltas of the Bark band powers, so that the frames can still be compared
+ * bit by bit.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class LandmarkHasher implements SubFingerprintHasher {
+
+    // number of peaks of a frame that are paired
+    private static final int PEAKS_PER_FRAME = 3;
+    // maximum number of frames between the peaks of a pair, the frames
+    // remembered for pairing
+    private static final int TARGET_FRAMES = 31;
+    // maximum difference between the bins of the peaks of a pair
+    private static final int TARGET_BINS = 32;
+    // maximum number of pairs an anchor is part of
+    private static final int FAN_OUT = 4;
+    // bits used for a bin (relative to the first bin) and for the number of
+    // frames between the peaks in a key
+    private static final int BIN_BITS = 7;
+    private static final int DELTA_BITS = 5;
+
+    private int firstBin = AcousticAnalyzer.FIRST_ANALYZED_BIN;
+    private int lastBin = AcousticAnalyzer.LAST_ANALYZED_BIN;
+    private double[] magnitude = new double[lastBin - firstBin];
+    // peaks of the frames remembered, in a ring buffer indexed by the time
+    // of the frame modulo its length; a frame without peaks, or one that was
+    // not given, has no valid time
+    private int[][] peaks = new int[TARGET_FRAMES + 1][PEAKS_PER_FRAME];
+    private int[] peakCount = new int[TARGET_FRAMES + 1];
+    private int[][] pairs = new int[TARGET_FRAMES + 1][PEAKS_PER_FRAME];
+    private int[] frameTime = new int[TARGET_FRAMES + 1];
+
+    /**
+     * Makes a hasher for a single audio file
+     */
+    public LandmarkHasher() {
+        for (int i = 0; i < frameTime.length; i++) {
+            frameTime[i] = -1;
+        }
+    }
+
+    public int getFirstBin() {
+        return firstBin;
+    }
+
+    public int getLastBin() {
+        return lastBin;
+    }
+
+    public boolean hasWeakBits() {
+        return false;
+    }
+
+    /**
+     * Finds the peaks of the given frame, pairs them as targets with the
+     * peaks of the frames remembered as anchors, nearest frames first, and
+     * stores the keys of the pairs at the times of the anchors
+     *
+     * @see SubFingerprintHasher#update(double[], int, Map, int[])
+     */
+    public int update(
+            double[] spectrum,
+            int time,
+            Map<Integer, List<Integer>> fingerprint,
+            int[] weakBits) {
+        int slot = time % frameTime.length;
+        frameTime[slot] = time;
+        int count = findPeaks(spectrum, peaks[slot]);
+        peakCount[slot] = count;
+        for (int i = 0; i < count; i++) {
+            pairs[slot][i] = 0;
+        }
+        for (int dt = 1; dt <= TARGET_FRAMES && dt <= time; dt++) {
+            int anchor = (time - dt) % frameTime.length;
+            if (frameTime[anchor] != time - dt) {
+                continue;
+            }
+            for (int a = 0; a < peakCount[anchor]; a++) {
+                int f1 = peaks[anchor][a];
+                for (int t = 0; t < count && pairs[anchor][a] < FAN_OUT;
+                        t++) {
+                    int f2 = peaks[slot][t];
+                    if (Math.abs(f2 - f1) > TARGET_BINS) {
+                        continue;
+                    }
+                    AcousticAnalyzer.addToFingerprint(fingerprint,
+                            key(f1, f2, dt), time - dt);
+                    pairs[anchor][a]++;
+                }
+            }
+        }
+        return AcousticAnalyzer.averageDeltaPowerDiffHash(spectrum, null);
+    }
+
+    /**
+     * Finds the strongest local maxima of the magnitude within the bins read
+     * that are above the average magnitude of the frame
+     *
+     * @param spectrum - frequency domain data of the frame
+     * @param found - array into which the bins of the peaks are stored,
+     *            strongest first
+     * @return - the number of peaks found
+     */
+    private int findPeaks(double[] spectrum, int[] found) {
+        int half = spectrum.length / 2;
+        double sum = 0;
+        for (int k = firstBin; k < lastBin; k++) {
+            magnitude[k - firstBin] =
+                    Math.hypot(spectrum[k], spectrum[k + half]);
+            sum = sum + magnitude[k - firstBin];
+        }
+        double mean = sum / magnitude.length;
+        int count = 0;
+        for (int i = 1; i < magnitude.length - 1; i++) {
+            double m = magnitude[i];
+            if (m <= mean || m <= magnitude[i - 1] || m < magnitude[i + 1]) {
+                continue;
+            }
+            // insertion into the list of peaks ordered by magnitude
+            if (count == found.length
+                    && m <= magnitude[found[count - 1] - firstBin]) {
+                continue;
+            }
+            int pos = count < found.length ? count++ : count - 1;
+            while (pos > 0 && magnitude[found[pos - 1] - firstBin] < m) {
+                found[pos] = found[pos - 1];
+                pos--;
+            }
+            found[pos] = i + firstBin;
+        }
+        return count;
+    }
+
+    /**
+     * @return - the key of the pair of peaks at the given bins, dt frames
+     *         apart
+     */
+    private int key(int f1, int f2, int dt) {
+        int mask = (1 << BIN_BITS) - 1;
+        return ((f1 - firstBin) & mask)
+                | (((f2 - firstBin) & mask) << BIN_BITS)
+                | ((dt & ((1 << DELTA_BITS) - 1)) << (2 * BIN_BITS));
+    }
+
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class contains static methods to find a matching segment between two
+ * fingerprints whose keys are computed by the {@LandmarkHasher}. As an anchor
+ * time has many keys, and a key says nothing about the frames other than the
+ * ones it is anchored at, a match is identified by the alignment (the
+ * difference in time between the two files) shared by the most key
+ * collisions, as in "An Industrial-Strength Audio Search Algorithm" by Avery
+ * Wang. The collisions at the best alignment must then cover a continuous
+ * segment of at least the duration needed for a match.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class LandmarkMatcher {
+
+    // minimum duration in seconds covered by the collisions of a match, a
+    // little less than 5 seconds as the last anchors of a segment have no
+    // targets within it
+    private static final double MIN_MATCH_IN_SECONDS = 4.5;
+    // longest gap in seconds between the collisions of a continuous segment
+    private static final double MAX_GAP_IN_SECONDS = 1;
+    // minimum number of collisions of a match
+    private static final int MIN_COLLISIONS = 20;
+    // keys occurring more often than this in both files are too common to
+    // indicate an alignment
+    private static final int MAX_POSTINGS_PRODUCT = 256;
+
+    /**
+     * Returns the offset in seconds of the beginning of the matching segment
+     * within the first fingerprint, along with the offset in seconds of the
+     * beginning of the matching segment within the second fingerprint. If
+     * there is no match, returns a null
+     *
+     * @param fp1 - HashMap representing a fingerprint
+     * @param fp2 - HashMap representing another fingerprint
+     * @return - a double[2], where, result[0] and result[1] corresponds to the
+     *         times at which the match(if any) has occurred
+     */
+    public static double[] getMatchPositionInSeconds(
+            Map<Integer, List<Integer>> fp1,
+            Map<Integer, List<Integer>> fp2) {
+        // votes for every alignment, time in fp2 minus time in fp1
+        Map<Integer, int[]> votes = new HashMap<Integer, int[]>();
+        int bestAlignment = 0, bestVotes = 0;
+        for (Map.Entry<Integer, List<Integer>> e : fp1.entrySet()) {
+            int k = e.getKey();
+            List<Integer> t1 = e.getValue();
+            List<Integer> t2 = fp2.get(k);
+            if (t2 == null || t1.size() * t2.size() > MAX_POSTINGS_PRODUCT
+                    || ComparableAudioFile.isStopped(k)) {
+                continue;
+            }
+            for (int a : t1) {
+                for (int b : t2) {
+                    int[] v = votes.get(b - a);
+                    if (v == null) {
+                        v = new int[1];
+                        votes.put(b - a, v);
+                    }
+                    if (++v[0] > bestVotes) {
+                        bestVotes = v[0];
+                        bestAlignment = b - a;
+                    }
+                }
+            }
+        }
+        if (bestVotes < MIN_COLLISIONS) {
+            return null;
+        }
+        int start = findMatchingSegment(fp1, fp2, bestAlignment);
+        if (start == -1) {
+            return null;
+        }
+        double frameOffset = ComparableAudioFile.getFrameOffsetInSeconds();
+        return new double[] { frameOffset * start,
+                frameOffset * (start + bestAlignment) };
+    }
+
+    /**
+     * Finds the earliest continuous segment of the first fingerprint whose
+     * collisions at the given alignment are long and numerous enough for a
+     * match
+     *
+     * @return - the time in the first fingerprint at which the segment
+     *         starts, or -1 if there is no such segment
+     */
+    private static int findMatchingSegment(
+            Map<Integer, List<Integer>> fp1,
+            Map<Integer, List<Integer>> fp2,
+            int alignment) {
+        int[] times = new int[64];
+        int count = 0;
+        for (Map.Entry<Integer, List<Integer>> e : fp1.entrySet()) {
+            int k = e.getKey();
+            List<Integer> t1 = e.getValue();
+            List<Integer> t2 = fp2.get(k);
+            if (t2 == null || t1.size() * t2.size() > MAX_POSTINGS_PRODUCT
+                    || ComparableAudioFile.isStopped(k)) {
+                continue;
+            }
+            for (int a : t1) {
+                if (t2.contains(a + alignment)) {
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, count << 1);
+                    }
+                    times[count++] = a;
+                }
+            }
+        }
+        Arrays.sort(times, 0, count);
+        double frameOffset = ComparableAudioFile.getFrameOffsetInSeconds();
+        int minSpan = (int) Math.ceil(MIN_MATCH_IN_SECONDS / frameOffset);
+        int maxGap = (int) Math.ceil(MAX_GAP_IN_SECONDS / frameOffset);
+        int runStart = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && times[i] - times[i - 1] > maxGap) {
+                runStart = i;
+            }
+            if (times[i] - times[runStart] >= minSpan
+                    && i - runStart + 1 >= MIN_COLLISIONS) {
+                return times[runStart];
+            }
+        }
+        return -1;
+    }
+
+}
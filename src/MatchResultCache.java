@@ -0,0 +1,353 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a persistent cache of the results of comparing pairs of
+ * {@ComparableAudioFile}, so that a pair compared by an earlier execution is
+ * not compared again. A result is keyed by the digests of the fingerprints of
+ * the two files and by the configuration the comparison depends on (the
+ * {@ComparableAudioFiles.MODES}, the {@SubFingerprintHashers.TYPES} and the
+ * matching options), and is either the offsets of the match or a verdict of
+ * no match.
+ *
+ * As the comparison of two files gives the same offsets, swapped, when the
+ * files are given in the other order, a pair is stored once with the file of
+ * the smaller digest first, and a pair given in either order is served by
+ * the same result. This does not hold when the hashes of only the first file
+ * are probed, nor when the alignments are scored by the bit error rate,
+ * whose refinement of the offsets depends on the order of the files, in
+ * which cases the order of the files is part of the key.
+ *
+ * The cache file is read when the cache is opened and written back when it is
+ * closed, if any result was added. All values are stored in big endian byte
+ * order.
+ *
+ * <pre>
+ * header:   magic (int), version (int), entry count (int)
+ * entry:    configuration (int), first digest (2 x long),
+ *           second digest (2 x long), match flag (byte),
+ *           offsets in seconds (2 x double)
+ * </pre>
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class MatchResultCache {
+
+    private static final int MAGIC = 0x44414D52;
+    private static final int VERSION = 1;
+
+    private static final String INVALID_CACHE =
+            "ERROR: The file %s is not a valid match result cache";
+    private static final String ERROR_WRITING_CACHE =
+            "ERROR: Error while writing the match result cache %s";
+
+    // the result stored for a pair of files without a match
+    private static final double[] NO_MATCH = new double[0];
+
+    private String fileName;
+    private Map<Key, double[]> results = new HashMap<Key, double[]>();
+    private boolean modified;
+    // digests of the fingerprints of the files compared so far
+    private Map<ComparableAudioFile, long[]> digests =
+            new IdentityHashMap<ComparableAudioFile, long[]>();
+
+    /**
+     * Opens the cache stored in the given file, or an empty cache if the file
+     * does not exist
+     *
+     * @param fName - file name of the cache
+     * @return - the opened {@MatchResultCache}
+     * @throws IOException
+     */
+    public static MatchResultCache open(String fName) throws IOException {
+        MatchResultCache cache = new MatchResultCache(fName);
+        if (new File(fName).exists()) {
+            cache.read();
+        }
+        return cache;
+    }
+
+    // constructor
+    private MatchResultCache(String fName) {
+        this.fileName = fName;
+    }
+
+    /**
+     * Returns the offsets in seconds of the matching segment between the
+     * given files, from the cache if the pair was compared before with the
+     * same configuration, and by comparing the files otherwise
+     *
+     * @param aS1 - {@ComparableAudioFile} to be compared
+     * @param aS2 - {@ComparableAudioFile} to be compared with
+     * @return - as returned by
+     *         {@ComparableAudioFile#getMatchPositionInSeconds}
+     */
+    public double[] getMatchPositionInSeconds(
+            ComparableAudioFile aS1,
+            ComparableAudioFile aS2) {
+        long[] d1 = digest(aS1), d2 = digest(aS2);
+        boolean ordered =
+                ComparableAudioFile.isMultiProbe()
+                        || ComparableAudioFile.isBitErrorRateMatch();
+        boolean swap = !ordered && compare(d1, d2) > 0;
+        Key key =
+                swap ? new Key(configuration(), d2, d1) : new Key(
+                        configuration(), d1, d2);
+        double[] result;
+        synchronized (this) {
+            result = results.get(key);
+        }
+        if (result == null) {
+            double[] match = aS1.getMatchPositionInSeconds(aS2);
+            if (match == null) {
+                result = NO_MATCH;
+            } else {
+                result = swap ? new double[] { match[1], match[0] } : match;
+            }
+            synchronized (this) {
+                results.put(key, result);
+                modified = true;
+            }
+        }
+        if (result == NO_MATCH) {
+            return null;
+        }
+        return swap ? new double[] { result[1], result[0] } : new double[] {
+                result[0], result[1] };
+    }
+
+    /**
+     * Forgets the digest of the fingerprint of the given file, computed when
+     * it was first compared, so that the file is no longer referred to by the
+     * cache once it will not be compared again
+     * 
+     * @param af - {@ComparableAudioFile} compared through the cache
+     */
+    public synchronized void forget(ComparableAudioFile af) {
+        digests.remove(af);
+    }
+
+    /**
+     * Writes the cache back to its file if any result was added since it was
+     * opened
+     */
+    public synchronized void close() {
+        if (!modified) {
+            return;
+        }
+        // written to a temporary file first so that an interrupted write
+        // leaves the previous cache intact
+        File tmp = new File(fileName + ".tmp");
+        try {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(tmp), 1 << 16));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(results.size());
+                for (Map.Entry<Key, double[]> e : results.entrySet()) {
+                    Key k = e.getKey();
+                    double[] r = e.getValue();
+                    out.writeInt(k.configuration);
+                    out.writeLong(k.first[0]);
+                    out.writeLong(k.first[1]);
+                    out.writeLong(k.second[0]);
+                    out.writeLong(k.second[1]);
+                    out.writeByte(r == NO_MATCH ? 0 : 1);
+                    out.writeDouble(r == NO_MATCH ? 0 : r[0]);
+                    out.writeDouble(r == NO_MATCH ? 0 : r[1]);
+                }
+            } finally {
+                out.close();
+            }
+            File f = new File(fileName);
+            if ((f.exists() && !f.delete()) || !tmp.renameTo(f)) {
+                throw new IOException();
+            }
+            modified = false;
+        } catch (IOException e) {
+            tmp.delete();
+            throw new RuntimeException(String.format(ERROR_WRITING_CACHE,
+                    fileName));
+        }
+    }
+
+    /**
+     * @return - the number of results in the cache
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Reads the results stored in the file of the cache
+     */
+    private void read() throws IOException {
+        DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(fileName), 1 << 16));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new RuntimeException(String.format(INVALID_CACHE,
+                        fileName));
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int configuration = in.readInt();
+                long[] first = new long[] { in.readLong(), in.readLong() };
+                long[] second = new long[] { in.readLong(), in.readLong() };
+                boolean matched = in.readByte() != 0;
+                double[] r = new double[] { in.readDouble(), in.readDouble() };
+                results.put(new Key(configuration, first, second),
+                        matched ? r : NO_MATCH);
+            }
+        } catch (EOFException e) {
+            throw new RuntimeException(String.format(INVALID_CACHE, fileName));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Encodes the settings the result of a comparison depends on, besides the
+     * fingerprints themselves
+     *
+     * @return - the ordinal of the mode in the low byte, of the hasher in the
+     *         next, followed by a bit per matching option
+     */
+    private static int configuration() {
+        return ComparableAudioFiles.getMode().ordinal()
+                | SubFingerprintHashers.getType().ordinal() << 8
+                | (ComparableAudioFile.isBitErrorRateMatch() ? 1 << 16 : 0)
+                | (ComparableAudioFile.isMultiProbe() ? 1 << 17 : 0);
+    }
+
+    /**
+     * Computes the digest of the fingerprint of the given file, once per
+     * file. The keys are digested in ascending order, each followed by its
+     * times in ascending order, so that the digest does not depend on the
+     * order in which the fingerprint was built or on where it was loaded from
+     *
+     * @param af - {@ComparableAudioFile} whose fingerprint is digested
+     * @return - the first 128 bits of the SHA-256 digest of the fingerprint
+     */
+    private long[] digest(ComparableAudioFile af) {
+        synchronized (this) {
+            long[] d = digests.get(af);
+            if (d != null) {
+                return d;
+            }
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("ERROR: SHA-256 is not available");
+        }
+        Map<Integer, List<Integer>> fp = af.getFingerprint();
+        int[] keys = new int[fp.size()];
+        int idx = 0;
+        for (int k : fp.keySet()) {
+            keys[idx++] = k;
+        }
+        Arrays.sort(keys);
+        byte[] buf = new byte[4];
+        int[] times = new int[16];
+        for (int k : keys) {
+            List<Integer> t = fp.get(k);
+            int n = t.size();
+            if (times.length < n) {
+                times = new int[Math.max(n, times.length << 1)];
+            }
+            for (int j = 0; j < n; j++) {
+                times[j] = t.get(j);
+            }
+            Arrays.sort(times, 0, n);
+            md.update(toBytes(k, buf));
+            md.update(toBytes(n, buf));
+            for (int j = 0; j < n; j++) {
+                md.update(toBytes(times[j], buf));
+            }
+        }
+        byte[] hash = md.digest();
+        long[] d = new long[2];
+        for (int i = 0; i < 16; i++) {
+            d[i >> 3] = (d[i >> 3] << 8) | (hash[i] & 0xFF);
+        }
+        synchronized (this) {
+            digests.put(af, d);
+        }
+        return d;
+    }
+
+    /**
+     * @return - the given value in big endian byte order in the given array
+     */
+    private static byte[] toBytes(int v, byte[] buf) {
+        buf[0] = (byte) (v >>> 24);
+        buf[1] = (byte) (v >>> 16);
+        buf[2] = (byte) (v >>> 8);
+        buf[3] = (byte) v;
+        return buf;
+    }
+
+    /**
+     * Compares two digests as unsigned 128 bit numbers
+     */
+    private static int compare(long[] d1, long[] d2) {
+        int c = Long.compareUnsigned(d1[0], d2[0]);
+        return c != 0 ? c : Long.compareUnsigned(d1[1], d2[1]);
+    }
+
+    /**
+     * The key of a result, the configuration and the digests of the two files
+     *
+     */
+    private static class Key {
+
+        private int configuration;
+        private long[] first, second;
+
+        Key(int configuration, long[] first, long[] second) {
+            this.configuration = configuration;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return configuration == k.configuration
+                    && Arrays.equals(first, k.first)
+                    && Arrays.equals(second, k.second);
+        }
+
+        @Override
+        public int hashCode() {
+            // the digests are uniformly distributed already
+            return configuration * 31 + (int) first[0] ^ (int) second[0];
+        }
+    }
+
+}
@@ -189,6 +189,28 @@ public class Mp3File extends AudioFile {
         return internalRepresentation.getNext(streamingLength);
     }
 
+    /**
+     * This method delegates the call to its internal representation which is a
+     * {@WavFile}
+     * @see AudioFile#read(float[], int, int)
+     */
+    @Override
+    public int read(float[] dst, int off, int len) {
+        setInternalRepresentation();
+        return internalRepresentation.read(dst, off, len);
+    }
+
+    /**
+     * This method delegates the call to its internal representation which is a
+     * {@WavFile}
+     * @see AudioFile#read(short[], int, int)
+     */
+    @Override
+    public int read(short[] dst, int off, int len) {
+        setInternalRepresentation();
+        return internalRepresentation.read(dst, off, len);
+    }
+
     /**
      * This method delegates the call to its internal representation which is a
      * {@WavFile}
@@ -0,0 +1,397 @@
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This class holds the fingerprints of {@ComparableAudioFile} outside of the
+ * Java heap, in direct byte buffers, so that the heap, and the time taken by
+ * the garbage collector to trace it, does not grow with the number of files
+ * whose fingerprints are held. Every fingerprint is copied into an open
+ * addressing hash table of its keys, followed by the arrays of the times of
+ * every key, and is read through a read-only map view that decodes nothing in
+ * advance. The sub-fingerprints and the least reliable bits of the frames
+ * are copied after the times, and are read into an array every time they are
+ * requested, so that they are held by the heap only while they are used.
+ *
+ * The memory is allocated from slabs that are allocated as needed and are
+ * all released together when the index is closed, after which the views of
+ * the fingerprints must not be used. A fingerprint too large for a slab gets
+ * a buffer of its own. As the number of slabs is not bounded, the index may
+ * hold far more than the largest single buffer.
+ *
+ * <pre>
+ * fingerprint: table capacity (int), key count (int), frame count (int),
+ *              sub-fingerprint count (int), offset of the sub-fingerprints
+ *              (int), offset of the bits (int, 0 if they are not known),
+ *              table (capacity x (key, offset of its times, time count)),
+ *              times (for every key: the times in ascending order),
+ *              sub-fingerprints (int per frame), bits (int per frame)
+ * </pre>
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class OffHeapFingerprintIndex {
+
+    private static final String INDEX_CLOSED =
+            "ERROR: The off-heap fingerprint index is closed";
+
+    // size in bytes of a slab
+    private static final int SLAB_SIZE = 64 << 20;
+    // size in bytes of the header and of a slot of the table of a
+    // fingerprint
+    private static final int HEADER_SIZE = 24;
+    private static final int SLOT_SIZE = 12;
+
+    private List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    private ByteBuffer slab;
+    private long allocated;
+    private volatile boolean closed;
+
+    /**
+     * Copies the fingerprint of the given file into the index, along with
+     * the sub-fingerprints and the least reliable bits of its frames
+     *
+     * @param af - {@ComparableAudioFile} whose fingerprint is copied
+     * @return - a read-only view of the copy of the fingerprint
+     */
+    public OffHeapFingerprint add(ComparableAudioFile af) {
+        Map<Integer, List<Integer>> fp = af.getFingerprint();
+        int keyCount = fp.size();
+        // at most half of the slots are used, so that probe sequences stay
+        // short
+        int capacity = Integer.highestOneBit(Math.max(1, keyCount) * 2 - 1)
+                << 1;
+        long timeCount = 0;
+        for (List<Integer> times : fp.values()) {
+            timeCount += times.size();
+        }
+        int[] subFingerprints = af.getSubFingerprints();
+        int[] weakBits = af.getWeakBits();
+        int frames = subFingerprints.length;
+        // the sub-fingerprints and the bits follow the times
+        long timesEnd =
+                HEADER_SIZE + (long) SLOT_SIZE * capacity + 4 * timeCount;
+        long size = timesEnd + 4L * frames * (weakBits != null ? 2 : 1);
+        if (size > Integer.MAX_VALUE) {
+            throw new RuntimeException(
+                    "ERROR: The fingerprint is too large to be held off-heap");
+        }
+        ByteBuffer buf = allocate((int) size);
+
+        int frameCount = af.getFrameCount();
+        // a key without times would leave its slot looking unused
+        int stored = 0;
+        int timesIdx = HEADER_SIZE + SLOT_SIZE * capacity;
+        int[] sorted = new int[16];
+        for (Map.Entry<Integer, List<Integer>> e : fp.entrySet()) {
+            int key = e.getKey();
+            List<Integer> times = e.getValue();
+            int n = times.size();
+            if (n == 0) {
+                continue;
+            }
+            stored++;
+            if (sorted.length < n) {
+                sorted = new int[Math.max(n, sorted.length << 1)];
+            }
+            for (int j = 0; j < n; j++) {
+                sorted[j] = times.get(j);
+            }
+            Arrays.sort(sorted, 0, n);
+            int slot = slotOf(key, capacity);
+            while (buf.getInt(HEADER_SIZE + SLOT_SIZE * slot + 8) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            int idx = HEADER_SIZE + SLOT_SIZE * slot;
+            buf.putInt(idx, key);
+            buf.putInt(idx + 4, timesIdx);
+            buf.putInt(idx + 8, n);
+            for (int j = 0; j < n; j++) {
+                buf.putInt(timesIdx, sorted[j]);
+                timesIdx += 4;
+            }
+            frameCount = Math.max(frameCount, sorted[n - 1] + 1);
+        }
+        int subFingerprintsIdx = (int) timesEnd;
+        int weakBitsIdx = 0;
+        putInts(buf, subFingerprintsIdx, subFingerprints, frames);
+        if (weakBits != null) {
+            weakBitsIdx = subFingerprintsIdx + 4 * frames;
+            putInts(buf, weakBitsIdx, weakBits, frames);
+        }
+        buf.putInt(0, capacity);
+        buf.putInt(4, stored);
+        buf.putInt(8, frameCount);
+        buf.putInt(12, frames);
+        buf.putInt(16, subFingerprintsIdx);
+        buf.putInt(20, weakBitsIdx);
+        return new OffHeapFingerprint(buf);
+    }
+
+    /**
+     * @return - the number of bytes held by the fingerprints in the index
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocated;
+    }
+
+    /**
+     * Releases all the memory held by the index. The buffers are freed by the
+     * garbage collector once no view of a fingerprint refers to them
+     */
+    public synchronized void close() {
+        closed = true;
+        slabs.clear();
+        slab = null;
+    }
+
+    /**
+     * Allocates a zeroed region of the given size from the current slab, a
+     * new slab if it does not fit, or a buffer of its own if it is larger
+     * than a slab
+     */
+    private synchronized ByteBuffer allocate(int size) {
+        if (closed) {
+            throw new RuntimeException(INDEX_CLOSED);
+        }
+        allocated += size;
+        if (size > SLAB_SIZE / 4) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        if (slab == null || slab.remaining() < size) {
+            slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            slabs.add(slab);
+        }
+        ByteBuffer region = slab.slice();
+        region.limit(size);
+        // keeps the next region aligned to an int
+        slab.position(slab.position() + ((size + 3) & ~3));
+        return region;
+    }
+
+    /**
+     * Copies the first values of the given array into the given buffer at
+     * the given index
+     */
+    private static void putInts(ByteBuffer buf, int idx, int[] values, int n) {
+        ByteBuffer region = buf.duplicate();
+        region.position(idx);
+        region.asIntBuffer().put(values, 0, n);
+    }
+
+    /**
+     * Reads the given number of values from the given buffer at the given
+     * index into a new array
+     */
+    private static int[] getInts(ByteBuffer buf, int idx, int n) {
+        ByteBuffer region = buf.duplicate();
+        region.position(idx);
+        int[] values = new int[n];
+        region.asIntBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Maps a key to its home slot, mixing the bits as the keys are not
+     * uniformly distributed
+     */
+    private static int slotOf(int key, int capacity) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (capacity - 1);
+    }
+
+    /**
+     * A read-only view of a fingerprint held by the index. The times of a key
+     * are read from the buffer every time they are requested
+     *
+     */
+    public class OffHeapFingerprint extends
+            AbstractMap<Integer, List<Integer>> {
+
+        private ByteBuffer buf;
+        private int capacity;
+        private int keyCount;
+        private int frameCount;
+        private int subFingerprintCount;
+        private int subFingerprintsIdx;
+        private int weakBitsIdx;
+
+        private OffHeapFingerprint(ByteBuffer buf) {
+            this.buf = buf;
+            capacity = buf.getInt(0);
+            keyCount = buf.getInt(4);
+            frameCount = buf.getInt(8);
+            subFingerprintCount = buf.getInt(12);
+            subFingerprintsIdx = buf.getInt(16);
+            weakBitsIdx = buf.getInt(20);
+        }
+
+        /**
+         * @return - the number of frames of the fingerprint
+         */
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * @return - a copy of the sub-fingerprints of the frames, ordered by
+         *         time
+         */
+        public int[] getSubFingerprints() {
+            if (closed) {
+                throw new RuntimeException(INDEX_CLOSED);
+            }
+            return getInts(buf, subFingerprintsIdx, subFingerprintCount);
+        }
+
+        /**
+         * @return - a copy of the positions of the least reliable bits of the
+         *         frames, ordered by time, or null if they are not known
+         */
+        public int[] getWeakBits() {
+            if (closed) {
+                throw new RuntimeException(INDEX_CLOSED);
+            }
+            return weakBitsIdx == 0 ? null : getInts(buf, weakBitsIdx,
+                    subFingerprintCount);
+        }
+
+        /**
+         * @return - the index of the slot of the given key, or -1 if the key
+         *         is not present
+         */
+        private int indexOf(int key) {
+            if (closed) {
+                throw new RuntimeException(INDEX_CLOSED);
+            }
+            int slot = slotOf(key, capacity);
+            while (true) {
+                int idx = HEADER_SIZE + SLOT_SIZE * slot;
+                if (buf.getInt(idx + 8) == 0) {
+                    return -1;
+                }
+                if (buf.getInt(idx) == key) {
+                    return idx;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+
+        @Override
+        public List<Integer> get(Object key) {
+            if (!(key instanceof Integer)) {
+                return null;
+            }
+            int idx = indexOf((Integer) key);
+            return idx < 0 ? null : new TimeList(buf, buf.getInt(idx + 4), buf
+                    .getInt(idx + 8));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && indexOf((Integer) key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return keyCount;
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, List<Integer>>> entrySet() {
+            if (closed) {
+                throw new RuntimeException(INDEX_CLOSED);
+            }
+            return new AbstractSet<Map.Entry<Integer, List<Integer>>>() {
+                @Override
+                public Iterator<Map.Entry<Integer, List<Integer>>> iterator() {
+                    return new Iterator<Map.Entry<Integer, List<Integer>>>() {
+                        private int slot = nextUsed(0);
+
+                        public boolean hasNext() {
+                            return slot < capacity;
+                        }
+
+                        public Map.Entry<Integer, List<Integer>> next() {
+                            if (slot >= capacity) {
+                                throw new NoSuchElementException();
+                            }
+                            int idx = HEADER_SIZE + SLOT_SIZE * slot;
+                            slot = nextUsed(slot + 1);
+                            return new AbstractMap.SimpleImmutableEntry<
+                                    Integer, List<Integer>>(buf.getInt(idx),
+                                    new TimeList(buf, buf.getInt(idx + 4),
+                                            buf.getInt(idx + 8)));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keyCount;
+                }
+            };
+        }
+
+        /**
+         * @return - the first used slot from the given slot on, capacity if
+         *         there is none
+         */
+        private int nextUsed(int slot) {
+            while (slot < capacity
+                    && buf.getInt(HEADER_SIZE + SLOT_SIZE * slot + 8) == 0) {
+                slot++;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * A read-only list view of the times of a key in a buffer
+     */
+    private static class TimeList extends AbstractList<Integer> implements
+            CollisionTimeline.IntTimes {
+
+        private ByteBuffer buf;
+        private int idx;
+        private int size;
+
+        private TimeList(ByteBuffer buf, int idx, int size) {
+            this.buf = buf;
+            this.idx = idx;
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException();
+            }
+            return buf.getInt(idx + 4 * i);
+        }
+
+        public int getTime(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException();
+            }
+            return buf.getInt(idx + 4 * i);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class compares every {@ComparableAudioFile} of a first list with every
+ * one of a second list on the threads of a {@ForkJoinPool}. The range of
+ * pairs, numbered in the order of the sequential nested loop over the two
+ * lists, is split in halves till the ranges are small enough to be compared
+ * by a single task.
+ *
+ * Two names of the same file, as told by
+ * {@ComparableAudioFiles#isIdenticalPair}, are reported as a match from the
+ * start of both without being compared.
+ *
+ * The matches are printed as soon as they are found, in the same order as the
+ * sequential loop would print them: the result of a pair compared ahead of
+ * the pairs before it is held in a reorder buffer till all of them have been
+ * compared. As the left half of a range is compared first by the thread that
+ * split it, the buffer holds few results at any time. If a comparison fails,
+ * the matches of the pairs before it are printed, the pairs after it are no
+ * longer compared, and its error is raised, as by the sequential loop.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class ParallelPairMatcher {
+
+    // largest range of pairs compared by a single task
+    private static final int PAIRS_PER_TASK = 4;
+    // the result of a pair without a match in the reorder buffer
+    private static final String NO_MATCH = "";
+    // the position of the match of two names of the same file, which match
+    // from the start of both
+    private static final double[] IDENTICAL_MATCH = { 0, 0 };
+
+    private List<ComparableAudioFile> files1, files2;
+    private MatchResultCache cache;
+    private String format;
+    private PrintStream out;
+    private int parallelism;
+
+    // results of the pairs compared ahead of the next pair to be printed,
+    // keyed by the number of the pair
+    private Map<Long, String> pending = new HashMap<Long, String>();
+    private long nextToPrint;
+    // the error raised by the first pair, in the order of the sequential
+    // loop, whose comparison failed, rethrown once all the tasks have
+    // completed, and the number of that pair. The pairs after it are neither
+    // compared nor printed, as the sequential loop would have stopped there
+    private RuntimeException error;
+    private volatile long failedPair = Long.MAX_VALUE;
+
+    /**
+     * @param files1 - list of {@ComparableAudioFile} to be compared
+     * @param files2 - list of {@ComparableAudioFile} to be compared with
+     * @param cache - {@MatchResultCache} serving the results, null to compare
+     *            every pair
+     * @param format - format of a match, given the two file names and the two
+     *            offsets in seconds
+     * @param out - stream to which the matches are printed
+     * @param parallelism - the number of threads comparing pairs
+     */
+    public ParallelPairMatcher(
+            List<ComparableAudioFile> files1,
+            List<ComparableAudioFile> files2,
+            MatchResultCache cache,
+            String format,
+            PrintStream out,
+            int parallelism) {
+        this.files1 = files1;
+        this.files2 = files2;
+        this.cache = cache;
+        this.format = format;
+        this.out = out;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compares all the pairs and prints the matches, returning once every
+     * pair has been compared
+     */
+    public void run() {
+        if (files1.isEmpty() || files2.isEmpty()) {
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Compares all the pairs on the threads of the given pool, which may be
+     * running other tasks as well, and prints the matches, returning once
+     * every pair has been compared
+     * 
+     * @param pool - the pool on which the pairs are compared
+     */
+    public void run(ForkJoinPool pool) {
+        long pairCount = (long) files1.size() * files2.size();
+        if (pairCount == 0) {
+            return;
+        }
+        pool.invoke(new Compare(0, pairCount));
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Compares the pair with the given number
+     *
+     * @return - the line to be printed for the pair, NO_MATCH if there is no
+     *         match
+     */
+    private String compare(long pair) {
+        ComparableAudioFile aS1 = files1.get((int) (pair / files2.size()));
+        ComparableAudioFile aS2 = files2.get((int) (pair % files2.size()));
+        double[] matchPosition;
+        if (ComparableAudioFiles.isIdenticalPair(aS1, aS2)) {
+            matchPosition = IDENTICAL_MATCH;
+        } else if (cache != null) {
+            matchPosition = cache.getMatchPositionInSeconds(aS1, aS2);
+        } else {
+            matchPosition = aS1.getMatchPositionInSeconds(aS2);
+        }
+        if (matchPosition == null) {
+            return NO_MATCH;
+        }
+        return String.format(format, aS1.getFileName(), aS2.getFileName(),
+                matchPosition[0], matchPosition[1]);
+    }
+
+    /**
+     * Adds the result of the given pair to the reorder buffer, and prints the
+     * results of the pairs that no longer wait for an earlier pair
+     */
+    private synchronized void record(long pair, String line) {
+        pending.put(pair, line);
+        String next;
+        while (nextToPrint < failedPair
+                && (next = pending.remove(nextToPrint)) != null) {
+            if (next != NO_MATCH) {
+                out.println(next);
+            }
+            nextToPrint++;
+        }
+    }
+
+    /**
+     * Records the error raised by the comparison of the given pair, unless an
+     * earlier pair has failed
+     */
+    private synchronized void fail(long pair, RuntimeException e) {
+        if (pair < failedPair) {
+            error = e;
+            failedPair = pair;
+        }
+    }
+
+    /**
+     * The task comparing a range of pairs
+     *
+     */
+    private class Compare extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private long from, to;
+
+        Compare(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            // the pairs after a failed pair are cancelled
+            if (from >= failedPair) {
+                return;
+            }
+            if (to - from > PAIRS_PER_TASK) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new Compare(from, mid), new Compare(mid, to));
+                return;
+            }
+            for (long pair = from; pair < to && pair < failedPair; pair++) {
+                try {
+                    record(pair, compare(pair));
+                } catch (RuntimeException e) {
+                    fail(pair, e);
+                }
+            }
+        }
+    }
+
+}
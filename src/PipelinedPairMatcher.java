@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class compares every {@ComparableAudioFile} of a first list, analyzed
+ * beforehand, with every file of a second list, analyzing the files of the
+ * second list one after the other while the earlier ones are compared. A file
+ * of the second list is compared with all the files of the first as soon as
+ * it has been analyzed, its matches are printed, and it is then dropped, so
+ * the memory held is that of the first list and of the few files of the
+ * second list analyzed ahead of the comparisons, and the first matches are
+ * printed long before all the files have been analyzed. The files of the
+ * second list are listed only at first, and are opened, and decoded if they
+ * are compressed, once they are to be analyzed, so the decoders, the
+ * temporary files and the open files are those of the few files ahead too.
+ *
+ * The matches are printed in the order of a nested loop over the second list
+ * and then the first, that is grouped by the file of the second list, instead
+ * of the order of {@ParallelPairMatcher}.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class PipelinedPairMatcher {
+
+    // number of files of the second list analyzed ahead of the comparisons
+    // per thread
+    private static final int FILES_AHEAD_PER_THREAD = 2;
+
+    private List<ComparableAudioFile> files1;
+    private String flag2;
+    private String[] files2;
+    private MatchResultCache cache;
+    private String format;
+    private PrintStream out;
+    private int parallelism;
+
+    /**
+     * @param files1 - list of {@ComparableAudioFile} to be compared
+     * @param flag2 - '-f' if the second list is a file, '-d' if it is the
+     *            files of a directory
+     * @param path2 - path name of the file or of the directory
+     * @param cache - {@MatchResultCache} serving the results, null to compare
+     *            every pair
+     * @param format - format of a match, given the two file names and the two
+     *            offsets in seconds
+     * @param out - stream to which the matches are printed
+     * @param parallelism - the number of threads analyzing the files and
+     *            comparing pairs
+     */
+    public PipelinedPairMatcher(
+            List<ComparableAudioFile> files1,
+            String flag2,
+            String path2,
+            MatchResultCache cache,
+            String format,
+            PrintStream out,
+            int parallelism) {
+        this.files1 = files1;
+        this.flag2 = flag2;
+        this.files2 = AudioFiles.listFilesFromArg(flag2, path2);
+        this.cache = cache;
+        this.format = format;
+        this.out = out;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Analyzes the files of the second list and compares them with the files
+     * of the first, returning once every pair has been compared. A file of a
+     * directory that cannot be read is reported, and is skipped, as by
+     * {@AudioFiles}
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run() throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Deque<CompletableFuture<ComparableAudioFile>> ahead =
+                    new ArrayDeque<CompletableFuture<ComparableAudioFile>>();
+            int window = parallelism * FILES_AHEAD_PER_THREAD;
+            int next = 0;
+            while (next < files2.length || !ahead.isEmpty()) {
+                while (next < files2.length && ahead.size() < window) {
+                    AudioFile af =
+                            AudioFiles.makeAudioFileFromArg(flag2,
+                                    files2[next++], 2);
+                    if (af != null) {
+                        ahead.add(ComparableAudioFiles
+                                .makeComparableAudioFileAsync(af, pool));
+                    }
+                }
+                if (ahead.isEmpty()) {
+                    continue;
+                }
+                ComparableAudioFile as2 =
+                        ComparableAudioFiles.join(ahead.remove());
+                if (as2 == null) {
+                    continue;
+                }
+                new ParallelPairMatcher(files1, Collections
+                        .singletonList(as2), cache, format, out, parallelism)
+                        .run(pool);
+                if (cache != null) {
+                    cache.forget(as2);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class reads the canonicalized segments of an {@AudioFile} ahead of
+ * their use. A reader thread reads (and thereby decodes and converts) the
+ * segments of the encapsulated file into a bounded queue, from which they are
+ * taken by the thread analyzing the file. The time spent waiting on the disk
+ * and converting the samples is thus overlapped with the analysis of the
+ * segments read earlier, while the queue limits the number of segments held
+ * in memory when the analysis is the slower of the two.
+ *
+ * The encapsulated file must not be used directly once it has been wrapped.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class PrefetchingAudioFile extends AudioFile {
+
+    // number of segments read ahead of the analysis
+    private static final int QUEUE_CAPACITY = 8;
+    // marks the end of the encapsulated file in the queue
+    private static final double[] END_OF_FILE = new double[0];
+
+    private AudioFile internalRepresentation;
+    private BlockingQueue<double[]> queue;
+    private Prefetcher prefetcher;
+    private Thread readerThread;
+    // segment taken from the queue and the position of its first sample not
+    // yet returned by getNext
+    private double[] current = new double[0];
+    private int position;
+    private boolean endOfFile;
+
+    /**
+     * This class contains the logic of the reader thread, which reads the
+     * segments of the encapsulated file till its end or till the reading is
+     * stopped
+     *
+     */
+    private static class Prefetcher implements Runnable {
+        private AudioFile audioFile;
+        private BlockingQueue<double[]> queue;
+        private int segmentLength;
+        // error raised while reading, such as an OutOfMemoryError, handed to
+        // the thread analyzing the file
+        private volatile Throwable error;
+
+        private Prefetcher(
+                AudioFile audioFile,
+                BlockingQueue<double[]> queue,
+                int segmentLength) {
+            this.audioFile = audioFile;
+            this.queue = queue;
+            this.segmentLength = segmentLength;
+        }
+
+        /**
+         * This method is intended to be executed by a java Thread. Reads the
+         * segments into the queue, followed by END_OF_FILE
+         */
+        public void run() {
+            try {
+                while (audioFile.hasNext()) {
+                    queue.put(audioFile.getNext(segmentLength));
+                }
+            } catch (InterruptedException ie) {
+                // the reading was stopped by close
+                return;
+            } catch (Throwable t) {
+                // the end of the file is queued whatever the error, so the
+                // thread analyzing the file does not wait for it forever
+                error = t;
+            }
+            try {
+                queue.put(END_OF_FILE);
+            } catch (InterruptedException ie) {
+                // do nothing
+            }
+        }
+    }
+
+    /**
+     * @param audioFile - {@AudioFile} to be read ahead
+     * @param segmentLength - number of samples read from the encapsulated file
+     *            at a time, ideally the length requested through getNext
+     */
+    public PrefetchingAudioFile(AudioFile audioFile, int segmentLength) {
+        this.internalRepresentation = audioFile;
+        this.queue = new ArrayBlockingQueue<double[]>(QUEUE_CAPACITY);
+        this.prefetcher = new Prefetcher(audioFile, queue, segmentLength);
+        this.readerThread = new Thread(prefetcher);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * This method delegates the call to the encapsulated file
+     * @see AudioFile#getBps()
+     */
+    @Override
+    public int getBps() {
+        return internalRepresentation.getBps();
+    }
+
+    /**
+     * This method delegates the call to the encapsulated file
+     * @see AudioFile#isAudioFileFormatValid()
+     */
+    @Override
+    public boolean isAudioFileFormatValid() {
+        return internalRepresentation.isAudioFileFormatValid();
+    }
+
+    /**
+     * This method delegates the call to the encapsulated file
+     * @see AudioFile#getDurationInSeconds()
+     */
+    @Override
+    public int getDurationInSeconds() {
+        return internalRepresentation.getDurationInSeconds();
+    }
+
+    /**
+     * This method delegates the call to the encapsulated file
+     * @see AudioFile#getShortName()
+     */
+    @Override
+    public String getShortName() {
+        return internalRepresentation.getShortName();
+    }
+
+    /**
+     * Returns the next segment read ahead by the reader thread, waiting for it
+     * if it has not been read yet. If the requested length differs from the
+     * length of the segments read, the segments are split or joined
+     * @see AudioFile#getNext(int)
+     */
+    @Override
+    public double[] getNext(int streamingLength) {
+        if (fill() && position == 0 && current.length == streamingLength) {
+            // the segment read is returned as such when the lengths agree
+            position = current.length;
+            return current;
+        }
+        double[] result = new double[streamingLength];
+        int count = 0;
+        while (count < streamingLength && fill()) {
+            int n =
+                    Math.min(streamingLength - count, current.length
+                            - position);
+            System.arraycopy(current, position, result, count, n);
+            position = position + n;
+            count = count + n;
+        }
+        if (count < streamingLength) {
+            double[] shorter = new double[count];
+            System.arraycopy(result, 0, shorter, 0, count);
+            result = shorter;
+        }
+        return result;
+    }
+
+    /**
+     * @see AudioFile#hasNext()
+     */
+    @Override
+    public boolean hasNext() {
+        return fill();
+    }
+
+    /**
+     * Stops the reader thread and closes the encapsulated file
+     * @see AudioFile#close()
+     */
+    @Override
+    public void close() {
+        readerThread.interrupt();
+        try {
+            readerThread.join();
+        } catch (InterruptedException ie) {
+            // do nothing
+        }
+        queue.clear();
+        internalRepresentation.close();
+    }
+
+    /**
+     * Takes the next segment from the queue if all the samples of the current
+     * segment have been returned
+     *
+     * @return - true if there are samples left to be returned, false at the
+     *         end of the encapsulated file
+     */
+    private boolean fill() {
+        while (position == current.length && !endOfFile) {
+            try {
+                current = queue.take();
+            } catch (InterruptedException ie) {
+                throwException(UNEXPECTED_ERROR);
+            }
+            position = 0;
+            if (current == END_OF_FILE) {
+                endOfFile = true;
+                if (prefetcher.error instanceof RuntimeException) {
+                    throw (RuntimeException) prefetcher.error;
+                }
+                if (prefetcher.error instanceof Error) {
+                    throw (Error) prefetcher.error;
+                }
+            }
+        }
+        return position < current.length;
+    }
+
+}
@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is an in-memory inverted index of the fingerprints of a set of
+ * reference files, which ranks the references by how well they match a query
+ * file in a single pass over the keys of the query. The score of a reference
+ * is the number of key collisions at its best alignment, the difference
+ * between the times of the colliding keys in the reference and in the query
+ * shared by the most collisions.
+ *
+ * The keys of the query are looked up in decreasing order of the number of
+ * collisions they can add to the score of any single reference, so that the
+ * bound on what the remaining keys can add falls quickly. Once no reference
+ * outside the current top K can reach the K-th score even if all the
+ * remaining collisions were at its best alignment, the top K references are
+ * known, and only their postings are counted for the remaining keys.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class ReferenceIndex {
+
+    // number of keys looked up between two checks of whether the top K
+    // references are known
+    private static final int CHECK_INTERVAL = 32;
+    // keys that can collide more often than this with a single reference are
+    // too common to indicate an alignment, as in the {@LandmarkMatcher}
+    private static final int MAX_COLLISIONS_PER_KEY = 256;
+
+    private List<String> fileNames = new ArrayList<String>();
+    private Map<Integer, Postings> index = new HashMap<Integer, Postings>();
+
+    /**
+     * Adds the fingerprint of the given reference file to the index
+     *
+     * @param reference - {@ComparableAudioFile} to be added to the index
+     */
+    public void add(ComparableAudioFile reference) {
+        int fileId = fileNames.size();
+        fileNames.add(reference.getFileName());
+        for (Map.Entry<Integer, List<Integer>> e : reference.getFingerprint()
+                .entrySet()) {
+            Postings p = index.get(e.getKey());
+            if (p == null) {
+                p = new Postings();
+                index.put(e.getKey(), p);
+            }
+            for (int t : e.getValue()) {
+                p.add(fileId, t);
+            }
+        }
+    }
+
+    /**
+     * Ranks the references by their score against the given query file and
+     * returns the K best of them, best first. References without any
+     * collision are not ranked
+     *
+     * @param query - {@ComparableAudioFile} to be matched with the index
+     * @param k - the number of references to return
+     * @return - list of at most k {@RankedMatch}, in decreasing order of
+     *         score
+     */
+    public List<RankedMatch> query(ComparableAudioFile query, int k) {
+        int refCount = fileNames.size();
+        Map<Integer, List<Integer>> fp = query.getFingerprint();
+
+        // the keys of the query with their bound on the collisions they can
+        // add to the score of a reference
+        List<int[]> lookups = new ArrayList<int[]>(fp.size());
+        long remaining = 0;
+        for (Map.Entry<Integer, List<Integer>> e : fp.entrySet()) {
+            Postings p = index.get(e.getKey());
+            if (p == null || ComparableAudioFile.isStopped(e.getKey())) {
+                continue;
+            }
+            int bound = e.getValue().size() * p.maxPerFile;
+            if (bound > MAX_COLLISIONS_PER_KEY) {
+                continue;
+            }
+            lookups.add(new int[] { e.getKey(), bound });
+            remaining += bound;
+        }
+        Collections.sort(lookups, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(b[1], a[1]);
+            }
+        });
+
+        // votes for every alignment of every reference, keyed by the
+        // reference in the high and the alignment in the low 32 bits, along
+        // with the earliest query time of the votes
+        Map<Long, int[]> votes = new HashMap<Long, int[]>();
+        int[] best = new int[refCount];
+        int[] bestAlignment = new int[refCount];
+        int[] bestStart = new int[refCount];
+        // the references still ranked, null while any reference may still
+        // enter the top K
+        boolean[] ranked = null;
+        int looked = 0;
+        for (int[] lookup : lookups) {
+            int key = lookup[0];
+            remaining -= lookup[1];
+            List<Integer> times = fp.get(key);
+            Postings p = index.get(key);
+            for (int i = 0; i < p.size; i++) {
+                int ref = p.files[i];
+                if (ranked != null && !ranked[ref]) {
+                    continue;
+                }
+                int t2 = p.times[i];
+                for (int t1 : times) {
+                    long vk = ((long) ref << 32) | ((t2 - t1) & 0xFFFFFFFFL);
+                    int[] v = votes.get(vk);
+                    if (v == null) {
+                        v = new int[] { 0, t1 };
+                        votes.put(vk, v);
+                    }
+                    v[0]++;
+                    v[1] = Math.min(v[1], t1);
+                    if (v[0] > best[ref]
+                            || (v[0] == best[ref] && bestAlignment[ref]
+                                    == t2 - t1)) {
+                        best[ref] = v[0];
+                        bestAlignment[ref] = t2 - t1;
+                        bestStart[ref] = v[1];
+                    }
+                }
+            }
+            if (ranked == null && ++looked % CHECK_INTERVAL == 0) {
+                ranked = rankedIfKnown(best, k, remaining);
+            }
+        }
+
+        List<RankedMatch> result = new ArrayList<RankedMatch>(k);
+        double frameOffset = ComparableAudioFile.getFrameOffsetInSeconds();
+        for (int ref : topK(best, k)) {
+            if (best[ref] > 0) {
+                result.add(new RankedMatch(fileNames.get(ref), best[ref],
+                        frameOffset * bestStart[ref], frameOffset
+                                * (bestStart[ref] + bestAlignment[ref])));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines whether the top K references are known, that is whether the
+     * best score outside the top K, increased by the most the remaining keys
+     * can add, cannot exceed the K-th score
+     *
+     * @return - the references in the top K if it is known, null otherwise
+     */
+    private static boolean[] rankedIfKnown(int[] best, int k, long remaining) {
+        if (best.length <= k) {
+            return null;
+        }
+        int[] top = topK(best, k + 1);
+        if (best[top[k]] + remaining > best[top[k - 1]]) {
+            return null;
+        }
+        boolean[] ranked = new boolean[best.length];
+        for (int i = 0; i < k; i++) {
+            ranked[top[i]] = true;
+        }
+        return ranked;
+    }
+
+    /**
+     * @return - the indices of the k highest scores, highest first, ties
+     *         broken by the order of addition
+     */
+    private static int[] topK(int[] best, int k) {
+        k = Math.min(k, best.length);
+        int[] top = new int[k];
+        int count = 0;
+        for (int ref = 0; ref < best.length; ref++) {
+            if (count == k && best[ref] <= best[top[k - 1]]) {
+                continue;
+            }
+            int pos = count < k ? count++ : k - 1;
+            while (pos > 0 && best[top[pos - 1]] < best[ref]) {
+                top[pos] = top[pos - 1];
+                pos--;
+            }
+            top[pos] = ref;
+        }
+        return Arrays.copyOf(top, count);
+    }
+
+    /**
+     * @return - the number of reference files in the index
+     */
+    public int size() {
+        return fileNames.size();
+    }
+
+    /**
+     * The postings of a key, the reference files and times at which it
+     * occurs, in the order of addition
+     *
+     */
+    private static class Postings {
+
+        private int[] files = new int[2];
+        private int[] times = new int[2];
+        private int size;
+        // the most postings of any single file
+        private int maxPerFile;
+        private int lastFile = -1, lastFileCount;
+
+        void add(int file, int time) {
+            if (size == files.length) {
+                files = Arrays.copyOf(files, size << 1);
+                times = Arrays.copyOf(times, size << 1);
+            }
+            files[size] = file;
+            times[size++] = time;
+            lastFileCount = file == lastFile ? lastFileCount + 1 : 1;
+            lastFile = file;
+            maxPerFile = Math.max(maxPerFile, lastFileCount);
+        }
+    }
+
+    /**
+     * A reference file ranked against a query file, with its score and the
+     * offsets in seconds of its best alignment
+     *
+     */
+    public static class RankedMatch {
+
+        private String fileName;
+        private int score;
+        private double queryOffset, referenceOffset;
+
+        RankedMatch(
+                String fileName,
+                int score,
+                double queryOffset,
+                double referenceOffset) {
+            this.fileName = fileName;
+            this.score = score;
+            this.queryOffset = queryOffset;
+            this.referenceOffset = referenceOffset;
+        }
+
+        /**
+         * @return - the file name of the reference file
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return - the number of key collisions at the best alignment
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * @return - the time in seconds within the query of the earliest
+         *         collision at the best alignment
+         */
+        public double getQueryOffset() {
+            return queryOffset;
+        }
+
+        /**
+         * @return - the time in seconds within the reference of the earliest
+         *         collision at the best alignment
+         */
+        public double getReferenceOffset() {
+            return referenceOffset;
+        }
+    }
+
+}
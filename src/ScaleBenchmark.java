@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class measures how dam behaves on catalogs of a given size, end to
+ * end: the scanning of the directories, the reading and analysis of every
+ * file, the growth of the heap and the comparison of every pair. It
+ * synthesizes a catalog and a directory of queries with {@SyntheticCorpus},
+ * every other query embedding a segment of a file of the catalog, and runs
+ * dam on them in a separate process, as the dam script does, for every run
+ * requested. The corpus is kept in a directory named after its
+ * configuration, so later runs with the same configuration reuse it.
+ *
+ * The files are written in a mix of formats given as weights of the
+ * {@SyntheticCorpus.TRANSFORMS} applied to them, such as
+ * "NONE=6,STEREO=2,RESAMPLE48K=1,REQUANTIZE=1" for mostly 44.1 kHz mono
+ * files with some stereo, 48 kHz and 8 bit ones.
+ *
+ * The result of every run is printed, and appended to the results file, as a
+ * JSON object on a line of its own, with the wall time, the peak resident
+ * set size of the process, the time spent in garbage collection pauses, and
+ * the files and pairs of files processed per second.
+ *
+ * Usage: java ScaleBenchmark directory catalog-files query-files
+ * [-seconds s] [-mix weights] [-seed n] [-runs r] [-label text]
+ * [-results file] [JVM options -X...] [dam options]
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class ScaleBenchmark {
+
+    private static final String USAGE =
+            "ERROR: usage: java ScaleBenchmark directory catalog-files"
+                    + " query-files [-seconds s] [-mix weights] [-seed n]"
+                    + " [-runs r] [-label text] [-results file]"
+                    + " [JVM options] [dam options]";
+    private static final String CATALOG_DIRECTORY = "catalog";
+    private static final String QUERY_DIRECTORY = "queries";
+    private static final String GC_LOG = "gc.log";
+    private static final int SAMPLING_RATE = 44100;
+    private static final int DEFAULT_SECONDS = 6;
+    // length in seconds of the segment of the catalog embedded in a query
+    private static final int SEGMENT_SECONDS = 5;
+    // interval in milliseconds at which the resident set size is sampled
+    private static final int RSS_POLL_INTERVAL = 10;
+
+    private static File dir;
+    private static int catalogFiles, queryFiles;
+    private static int seconds = DEFAULT_SECONDS;
+    private static String mix = "NONE=1";
+    private static long seed = 1;
+    private static int runs = 1;
+    private static String label = "";
+    private static File resultsFile;
+    private static List<String> jvmOptions = new ArrayList<String>();
+    private static List<String> damOptions = new ArrayList<String>();
+
+    public static void main(String[] args) throws Exception {
+        parseArguments(args);
+        SyntheticCorpus.TRANSFORMS[] formats = parseMix(mix);
+        File corpus =
+                new File(dir, String.format("c%d-q%d-%ds-%d-%s",
+                        catalogFiles, queryFiles, seconds, seed,
+                        mix.replace(',', '_')));
+        long start = System.nanoTime();
+        int written = synthesize(corpus, formats);
+        if (written > 0) {
+            System.err.println(String.format(
+                    "synthesized %d files in %.1f s", written,
+                    (System.nanoTime() - start) / 1e9));
+        }
+        for (int run = 0; run < runs; run++) {
+            String result = run(corpus);
+            System.out.println(result);
+            PrintWriter out =
+                    new PrintWriter(new FileWriter(resultsFile, true));
+            out.println(result);
+            out.close();
+        }
+    }
+
+    /**
+     * Parses the arguments into the static fields
+     */
+    private static void parseArguments(String[] args) {
+        if (args.length < 3) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        dir = new File(args[0]);
+        catalogFiles = Integer.parseInt(args[1]);
+        queryFiles = Integer.parseInt(args[2]);
+        resultsFile = new File(dir, "results.jsonl");
+        for (int i = 3; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if ("-seconds".equals(arg) && hasValue) {
+                seconds = Integer.parseInt(args[++i]);
+            } else if ("-mix".equals(arg) && hasValue) {
+                mix = args[++i];
+            } else if ("-seed".equals(arg) && hasValue) {
+                seed = Long.parseLong(args[++i]);
+            } else if ("-runs".equals(arg) && hasValue) {
+                runs = Integer.parseInt(args[++i]);
+            } else if ("-label".equals(arg) && hasValue) {
+                label = args[++i];
+            } else if ("-results".equals(arg) && hasValue) {
+                resultsFile = new File(args[++i]);
+            } else if (arg.startsWith("-X")) {
+                jvmOptions.add(arg);
+            } else {
+                damOptions.add(arg);
+            }
+        }
+        if (catalogFiles < 1 || queryFiles < 1
+                || seconds < SEGMENT_SECONDS + 1) {
+            throw new RuntimeException("ERROR: The catalog and the queries"
+                    + " need at least one file of at least "
+                    + (SEGMENT_SECONDS + 1) + " seconds");
+        }
+    }
+
+    /**
+     * Parses the weights of the formats into a table from which a format is
+     * drawn uniformly, holding every format as many times as its weight
+     */
+    private static SyntheticCorpus.TRANSFORMS[] parseMix(String weights) {
+        List<SyntheticCorpus.TRANSFORMS> table =
+                new ArrayList<SyntheticCorpus.TRANSFORMS>();
+        for (String w : weights.split(",")) {
+            String[] kv = w.split("=");
+            SyntheticCorpus.TRANSFORMS t;
+            int weight;
+            try {
+                t = SyntheticCorpus.TRANSFORMS.valueOf(kv[0].trim());
+                weight = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("ERROR: Invalid format weight "
+                        + w);
+            }
+            for (int i = 0; i < weight; i++) {
+                table.add(t);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new RuntimeException("ERROR: No format has a weight");
+        }
+        return table.toArray(new SyntheticCorpus.TRANSFORMS[table.size()]);
+    }
+
+    /**
+     * Writes the files of the catalog and the queries that do not exist yet.
+     * The audio of every file is drawn from a seed of its own, so that the
+     * segment of the catalog embedded in a query is synthesized again rather
+     * than held for all the catalog
+     *
+     * @return - the number of files written
+     */
+    private static int synthesize(
+            File corpus,
+            SyntheticCorpus.TRANSFORMS[] formats) throws IOException {
+        File catalog = new File(corpus, CATALOG_DIRECTORY);
+        File queries = new File(corpus, QUERY_DIRECTORY);
+        if (!catalog.isDirectory() && !catalog.mkdirs()
+                || !queries.isDirectory() && !queries.mkdirs()) {
+            throw new RuntimeException("ERROR: The directory " + corpus
+                    + " could not be created");
+        }
+        int length = seconds * SAMPLING_RATE;
+        int segment = SEGMENT_SECONDS * SAMPLING_RATE;
+        int written = 0;
+        for (int i = 0; i < catalogFiles; i++) {
+            File f = new File(catalog, String.format("c%06d.wav", i));
+            if (f.isFile()) {
+                continue;
+            }
+            Random random = new Random(seed * 0x9E3779B97F4A7C15L + i);
+            double[] samples = SyntheticCorpus.synthesize(random, length);
+            SyntheticCorpus.writeTransformed(f, samples, formats[random
+                    .nextInt(formats.length)], random);
+            written++;
+        }
+        for (int i = 0; i < queryFiles; i++) {
+            File f = new File(queries, String.format("q%06d.wav", i));
+            if (f.isFile()) {
+                continue;
+            }
+            Random random = new Random(~seed * 0x9E3779B97F4A7C15L + i);
+            double[] samples = SyntheticCorpus.synthesize(random, length);
+            if (i % 2 == 0) {
+                int c = random.nextInt(catalogFiles);
+                double[] source =
+                        SyntheticCorpus.synthesize(new Random(seed
+                                * 0x9E3779B97F4A7C15L + c), length);
+                System.arraycopy(source, random.nextInt(length - segment),
+                        samples, random.nextInt(length - segment), segment);
+            }
+            SyntheticCorpus.writeTransformed(f, samples, formats[random
+                    .nextInt(formats.length)], random);
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * Runs dam on the queries and the catalog of the corpus in a separate
+     * process, sampling its resident set size till it exits
+     *
+     * @return - the result of the run as a JSON object
+     */
+    private static String run(File corpus) throws Exception {
+        String user = System.getProperty("user.name");
+        // the temporary directories made by the dam script for the decoders
+        for (String sub : new String[] { "1/MP3", "1/OGG", "2/MP3", "2/OGG" }) {
+            new File("/tmp/" + user + "/" + sub).mkdirs();
+        }
+        File gcLog = new File(corpus, GC_LOG);
+        gcLog.delete();
+
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-Xlog:gc:file=" + gcLog.getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("dam");
+        command.add("-d");
+        command.add(new File(corpus, QUERY_DIRECTORY).getPath());
+        command.add("-d");
+        command.add(new File(corpus, CATALOG_DIRECTORY).getPath());
+        command.add(user);
+        command.addAll(damOptions);
+
+        long start = System.nanoTime();
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        final Process p = pb.start();
+        final long[] peakRss = { -1 };
+        Thread sampler = new Thread(new Runnable() {
+            public void run() {
+                File status = new File("/proc/" + p.pid() + "/status");
+                while (p.isAlive()) {
+                    long rss = readPeakRss(status);
+                    if (rss > peakRss[0]) {
+                        peakRss[0] = rss;
+                    }
+                    try {
+                        Thread.sleep(RSS_POLL_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        int matches = 0;
+        BufferedReader out =
+                new BufferedReader(new InputStreamReader(p.getInputStream()));
+        String line;
+        while ((line = out.readLine()) != null) {
+            if (line.startsWith("MATCH")) {
+                matches++;
+            }
+        }
+        int exitStatus = p.waitFor();
+        double wall = (System.nanoTime() - start) / 1e9;
+        sampler.join();
+        double[] gc = readGcPauses(gcLog);
+
+        long pairs = (long) catalogFiles * queryFiles;
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"label\":\"").append(escape(label)).append("\"");
+        json.append(",\"catalogFiles\":").append(catalogFiles);
+        json.append(",\"queryFiles\":").append(queryFiles);
+        json.append(",\"seconds\":").append(seconds);
+        json.append(",\"mix\":\"").append(escape(mix)).append("\"");
+        json.append(",\"options\":\"")
+                .append(escape(String.join(" ", damOptions))).append("\"");
+        json.append(",\"exitStatus\":").append(exitStatus);
+        json.append(",\"matches\":").append(matches);
+        json.append(String.format(",\"wallSeconds\":%.3f", wall));
+        json.append(",\"peakRssKb\":").append(peakRss[0]);
+        json.append(String.format(",\"gcPauseSeconds\":%.3f", gc[0]));
+        json.append(",\"gcPauses\":").append((long) gc[1]);
+        json.append(String.format(",\"filesPerSecond\":%.2f",
+                (catalogFiles + queryFiles) / wall));
+        json.append(String.format(",\"pairsPerSecond\":%.1f", pairs / wall));
+        json.append("}");
+        return json.toString();
+    }
+
+    /**
+     * @return - the peak resident set size in kB given by the status file of
+     *         a process, -1 if it cannot be read
+     */
+    private static long readPeakRss(File status) {
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(status));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.substring(6).replace("kB",
+                                "").trim());
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // the process has exited, or there is no proc file system
+        } catch (NumberFormatException e) {
+            // do nothing
+        }
+        return -1;
+    }
+
+    /**
+     * Sums the durations of the pauses logged by the garbage collector, the
+     * lines with "Pause" that end with a duration in milliseconds
+     *
+     * @return - double[2] of the total pause time in seconds and the number
+     *         of pauses
+     */
+    private static double[] readGcPauses(File gcLog) throws IOException {
+        double[] gc = new double[2];
+        if (!gcLog.isFile()) {
+            return gc;
+        }
+        BufferedReader in = new BufferedReader(new FileReader(gcLog));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (!line.contains("Pause") || !line.endsWith("ms")) {
+                    continue;
+                }
+                int from = line.lastIndexOf(' ') + 1;
+                try {
+                    gc[0] +=
+                            Double.parseDouble(line.substring(from, line
+                                    .length() - 2)) / 1000;
+                    gc[1]++;
+                } catch (NumberFormatException e) {
+                    // not a pause
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return gc;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
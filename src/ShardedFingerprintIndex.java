@@ -0,0 +1,277 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is the coordinator of a fingerprint index whose hash space is
+ * partitioned across several {@FingerprintShard} worker processes running on
+ * the local machine. Reference files are added by scattering their postings
+ * to the shard owning each hash. A query file is matched against all the
+ * reference files by scattering the lookups of its hashes to the shards,
+ * gathering the colliding postings into the part of the fingerprint of every
+ * reference file made of the keys of the query, and matching the query with
+ * those parts.
+ *
+ * The memory needed for the postings of the reference files is thereby
+ * divided between the worker processes, and the lookups of a query are
+ * served by all the workers in parallel.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class ShardedFingerprintIndex {
+
+    private static final String ERROR_STARTING_SHARD =
+            "ERROR: Unable to start the fingerprint shard worker";
+    private static final String ERROR_SHARD_COMMUNICATION =
+            "ERROR: Lost connection to a fingerprint shard worker";
+
+    private Process[] workers;
+    private Socket[] sockets;
+    private DataInputStream[] ins;
+    private DataOutputStream[] outs;
+    private List<String> fileNames = new ArrayList<String>();
+
+    /**
+     * Starts the given number of worker processes on the local machine and
+     * connects to each of them over the loopback interface
+     *
+     * @param shardCount - number of partitions of the hash space
+     * @throws IOException
+     */
+    public ShardedFingerprintIndex(int shardCount) throws IOException {
+        if (shardCount < 1) {
+            throw new RuntimeException("ERROR: Invalid number of shards");
+        }
+        workers = new Process[shardCount];
+        sockets = new Socket[shardCount];
+        ins = new DataInputStream[shardCount];
+        outs = new DataOutputStream[shardCount];
+        String javaCmd =
+                System.getProperty("java.home") + File.separator + "bin"
+                        + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                ProcessBuilder p =
+                        new ProcessBuilder(javaCmd, "-cp", classPath,
+                                "FingerprintShard", "0");
+                p.redirectError(ProcessBuilder.Redirect.INHERIT);
+                workers[i] = p.start();
+            }
+            // the workers print the port they are listening on once ready
+            for (int i = 0; i < shardCount; i++) {
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(
+                                workers[i].getInputStream()));
+                String port = reader.readLine();
+                if (port == null) {
+                    throw new RuntimeException(ERROR_STARTING_SHARD);
+                }
+                sockets[i] =
+                        new Socket(InetAddress.getLoopbackAddress(),
+                                Integer.parseInt(port.trim()));
+                sockets[i].setTcpNoDelay(true);
+                ins[i] =
+                        new DataInputStream(new BufferedInputStream(
+                                sockets[i].getInputStream(), 1 << 16));
+                outs[i] =
+                        new DataOutputStream(new BufferedOutputStream(
+                                sockets[i].getOutputStream(), 1 << 16));
+            }
+        } catch (IOException | RuntimeException e) {
+            // the workers started so far would otherwise wait for a
+            // connection forever, after the program has exited
+            close();
+            for (Process w : workers) {
+                if (w != null) {
+                    w.destroyForcibly();
+                }
+            }
+            if (e instanceof NumberFormatException) {
+                throw new RuntimeException(ERROR_STARTING_SHARD);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the given hash to the shard that owns it. The hash is mixed before
+     * partitioning as the bits of the sub-fingerprints are not uniformly
+     * distributed
+     *
+     * @param hash - sub-fingerprint hash
+     * @return - index of the shard owning the hash
+     */
+    private int shardOf(int hash) {
+        int h = hash * 0x9E3779B9;
+        h = h ^ (h >>> 16);
+        return Math.floorMod(h, workers.length);
+    }
+
+    /**
+     * Adds the fingerprint of the given reference file to the index by
+     * sending the postings of every hash to the shard owning the hash
+     *
+     * @param reference - {@ComparableAudioFile} to be added to the index
+     */
+    public void add(ComparableAudioFile reference) {
+        int fileId = fileNames.size();
+        fileNames.add(reference.getFileName());
+        Map<Integer, List<Integer>> fp = reference.getFingerprint();
+        int[] counts = new int[workers.length];
+        for (Map.Entry<Integer, List<Integer>> e : fp.entrySet()) {
+            counts[shardOf(e.getKey())] += e.getValue().size();
+        }
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                outs[i].writeByte(FingerprintShard.CMD_ADD);
+                outs[i].writeInt(fileId);
+                outs[i].writeInt(counts[i]);
+            }
+            for (Map.Entry<Integer, List<Integer>> e : fp.entrySet()) {
+                int hash = e.getKey();
+                DataOutputStream out = outs[shardOf(hash)];
+                for (int t : e.getValue()) {
+                    out.writeInt(hash);
+                    out.writeInt(t);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(ERROR_SHARD_COMMUNICATION);
+        }
+    }
+
+    /**
+     * Returns the offsets in seconds of the matching segments between the
+     * given query file and every reference file in the index. The lookups for
+     * the hashes of the query are sent to all the shards before any of the
+     * responses are read so that the shards serve them in parallel
+     *
+     * @param query - {@ComparableAudioFile} to be matched with the index
+     * @return - an array with an element per reference file in the order in
+     *         which they were added, where each element is either a double[2]
+     *         as returned by
+     *         {@ComparableAudioFile#getMatchPositionInSeconds} or null if
+     *         there is no match
+     */
+    public double[][] getMatchPositionsInSeconds(ComparableAudioFile query) {
+        Map<Integer, List<Integer>> fp = query.getFingerprint();
+        int shardCount = workers.length;
+        int[][] keys = new int[shardCount][];
+        int[] counts = new int[shardCount];
+        List<Integer> lookups = new ArrayList<Integer>(fp.size());
+        for (int k : fp.keySet()) {
+            // the hashes too common to be used for matching are not looked up
+            if (!ComparableAudioFile.isStopped(k)) {
+                lookups.add(k);
+                counts[shardOf(k)]++;
+            }
+        }
+        for (int i = 0; i < shardCount; i++) {
+            keys[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int k : lookups) {
+            int shard = shardOf(k);
+            keys[shard][counts[shard]++] = k;
+        }
+
+        int refCount = fileNames.size();
+        // the part of the fingerprint of every reference file made of the
+        // keys of the query, null if it has none of them
+        List<Map<Integer, List<Integer>>> partial =
+                new ArrayList<Map<Integer, List<Integer>>>(refCount);
+        for (int r = 0; r < refCount; r++) {
+            partial.add(null);
+        }
+        try {
+            // scatter
+            for (int i = 0; i < shardCount; i++) {
+                outs[i].writeByte(FingerprintShard.CMD_LOOKUP);
+                outs[i].writeInt(keys[i].length);
+                for (int k : keys[i]) {
+                    outs[i].writeInt(k);
+                }
+                outs[i].flush();
+            }
+            // gather
+            for (int i = 0; i < shardCount; i++) {
+                for (int k : keys[i]) {
+                    int postingCount = ins[i].readInt();
+                    for (int j = 0; j < postingCount; j++) {
+                        int fileId = ins[i].readInt();
+                        int time = ins[i].readInt();
+                        if (partial.get(fileId) == null) {
+                            partial.set(fileId,
+                                    new HashMap<Integer, List<Integer>>());
+                        }
+                        AcousticAnalyzer.addToFingerprint(partial.get(fileId),
+                                k, time);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(ERROR_SHARD_COMMUNICATION);
+        }
+
+        double[][] result = new double[refCount][];
+        for (int r = 0; r < refCount; r++) {
+            if (partial.get(r) != null) {
+                result[r] =
+                        ComparableAudioFile.computeFragmentMatch(fp,
+                                partial.get(r));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return - the number of reference files in the index
+     */
+    public int size() {
+        return fileNames.size();
+    }
+
+    /**
+     * @param fileId - index of a reference file in the order of addition
+     * @return - the file name of the reference file
+     */
+    public String getFileName(int fileId) {
+        return fileNames.get(fileId);
+    }
+
+    /**
+     * Shuts down the worker processes and closes the connections to them
+     */
+    public void close() {
+        for (int i = 0; i < workers.length; i++) {
+            try {
+                if (outs[i] != null) {
+                    outs[i].writeByte(FingerprintShard.CMD_SHUTDOWN);
+                    outs[i].flush();
+                    sockets[i].close();
+                }
+            } catch (IOException e) {
+                // do nothing
+            }
+            if (workers[i] != null) {
+                workers[i].destroy();
+            }
+        }
+    }
+
+}
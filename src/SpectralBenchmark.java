@@ -0,0 +1,135 @@
+import java.util.Random;
+
+/**
+ * This class measures the time taken to compute the bins read by the
+ * {@AcousticAnalyzer} for an analysis frame with the full FFT of
+ * {@ComparableAudioFile} and with every {@SpectralEngine}, for the frame and
+ * FFT sizes of the normal and the low rate modes. It also reports the largest
+ * difference between the magnitudes of the bins computed by an engine and by
+ * the full FFT, relative to the largest magnitude.
+ *
+ * Usage: java SpectralBenchmark [frames]
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class SpectralBenchmark {
+
+    private static final int DEFAULT_FRAMES = 20000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final String RESULT = "%-8s %-14s %10.0f ns/frame %6.2fx"
+            + "  max error %.1e";
+
+    public static void main(String[] args) {
+        int frames =
+                args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FRAMES;
+        run(ComparableAudioFiles.MODES.NORMAL, 2048, 1764, frames);
+        run(ComparableAudioFiles.MODES.LOWRATE, 512, 441, frames);
+    }
+
+    /**
+     * Benchmarks the engines for the FFT and frame sizes of the given mode
+     */
+    private static void run(
+            ComparableAudioFiles.MODES mode,
+            int fftSize,
+            int frameSize,
+            int frames) {
+        ComparableAudioFiles.setMode(mode);
+        ComparableAudioFile full = ComparableAudioFiles.makeIncremental(null);
+        int first = AcousticAnalyzer.FIRST_ANALYZED_BIN;
+        int last = AcousticAnalyzer.LAST_ANALYZED_BIN;
+
+        // random frames, windowed and padded with zeros
+        Random random = new Random(1);
+        double[][] inputs = new double[64][fftSize];
+        for (double[] input : inputs) {
+            for (int n = 0; n < frameSize; n++) {
+                double w =
+                        0.5 * (1 - Math.cos(2 * Math.PI * n / (frameSize - 1)));
+                input[n] = w * random.nextGaussian() * 1000;
+            }
+        }
+
+        SpectralEngine chosen =
+                SpectralEngine.choose(fftSize, frameSize, first, last);
+        SpectralEngine[] engines =
+                new SpectralEngine[] {
+                        new SpectralEngine.Goertzel(fftSize, frameSize, first,
+                                last),
+                        new SpectralEngine.Pruned(fftSize, fftSize / 2, first,
+                                last),
+                        new SpectralEngine.Pruned(fftSize, 64, first, last),
+                        chosen };
+        System.out.println(mode + ": FFT size " + fftSize + ", frame "
+                + frameSize + ", bins " + first + "-" + (last - 1)
+                + ", chosen "
+                + (chosen == null ? "full FFT" : chosen.getName()));
+
+        double fullTime = time(full, null, inputs, frames);
+        System.out.println(String.format(RESULT, mode, "full FFT", fullTime,
+                1.0, 0.0));
+        for (SpectralEngine engine : engines) {
+            if (engine == null) {
+                continue;
+            }
+            double t = time(full, engine, inputs, frames);
+            System.out.println(String.format(RESULT, mode, engine.getName(),
+                    t, fullTime / t, maxError(full, engine, inputs[0])));
+        }
+    }
+
+    /**
+     * @return - the average time in nanoseconds taken to transform a frame,
+     *         with the full FFT if engine is null
+     */
+    private static double time(
+            ComparableAudioFile full,
+            SpectralEngine engine,
+            double[][] inputs,
+            int frames) {
+        double sink = 0;
+        long elapsed = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                double[] input = inputs[i & (inputs.length - 1)];
+                double[] out =
+                        engine == null ? full.performFFT(input) : engine
+                                .transform(input);
+                sink = sink + out[AcousticAnalyzer.FIRST_ANALYZED_BIN];
+            }
+            elapsed = System.nanoTime() - start;
+        }
+        if (sink == Double.MAX_VALUE) {
+            System.out.println();
+        }
+        return (double) elapsed / frames;
+    }
+
+    /**
+     * @return - the largest difference between the magnitudes of the bins
+     *         computed by the engine and by the full FFT, relative to the
+     *         largest magnitude
+     */
+    private static double maxError(
+            ComparableAudioFile full,
+            SpectralEngine engine,
+            double[] input) {
+        int n = input.length;
+        double[] expected = full.performFFT(input);
+        double[] actual = engine.transform(input);
+        double maxDiff = 0, maxMagnitude = 0;
+        for (int k = AcousticAnalyzer.FIRST_ANALYZED_BIN;
+                k < AcousticAnalyzer.LAST_ANALYZED_BIN; k++) {
+            double e = Math.hypot(expected[k], expected[k + n]);
+            double a = Math.hypot(actual[k], actual[k + n]);
+            maxDiff = Math.max(maxDiff, Math.abs(e - a));
+            maxMagnitude = Math.max(maxMagnitude, e);
+        }
+        return maxDiff / maxMagnitude;
+    }
+
+}
@@ -0,0 +1,287 @@
+/**
+ * This class computes a limited range of the bins of the discrete Fourier
+ * transform of a windowed analysis frame, for the sub-fingerprints that are
+ * computed from a small part of the spectrum. The result has the same layout
+ * as the one of the full FFT of {@ComparableAudioFile}, an array of twice the
+ * FFT size with the real components followed by the imaginary components,
+ * of which only the bins in the range are computed.
+ *
+ * Two engines are provided, chosen by a cost model from the FFT size, the
+ * length of the frame and the number of bins needed:
+ *
+ * <pre>
+ * Goertzel - a second order filter per bin run over the samples of the frame,
+ *            cheapest when very few bins are needed
+ * Pruned   - the FFT decomposed into P = N / Q interleaved sub-sequences of
+ *            length Q whose FFTs are computed two at a time as the real and
+ *            imaginary parts of one complex FFT, followed by a twiddled sum
+ *            of the sub-transforms evaluated for the needed bins only
+ * </pre>
+ *
+ * The engines hold no state besides precomputed tables, and may be shared.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public abstract class SpectralEngine {
+
+    // estimated cost, in floating point operations, of a radix-2 butterfly,
+    // of a step of the Goertzel recurrence, and of separating the transforms
+    // of two sub-sequences and adding them to a bin
+    private static final int BUTTERFLY_COST = 10;
+    private static final int GOERTZEL_STEP_COST = 3;
+    private static final int COMBINE_COST = 20;
+
+    protected int fftSize;
+    protected int firstBin;
+    protected int lastBin;
+
+    /**
+     * @param fftSize - the size of the transform, a power of two
+     * @param firstBin - the first bin computed
+     * @param lastBin - the bin after the last bin computed
+     */
+    protected SpectralEngine(int fftSize, int firstBin, int lastBin) {
+        this.fftSize = fftSize;
+        this.firstBin = firstBin;
+        this.lastBin = lastBin;
+    }
+
+    /**
+     * Computes the bins of the range for the given frame
+     *
+     * @param input - a windowed analysis frame of size fftSize
+     * @return - an array of twice the FFT size in which the real and the
+     *         imaginary components of bin k, for k in the range, are at
+     *         index k and k + fftSize
+     */
+    public abstract double[] transform(double[] input);
+
+    /**
+     * @return - a short name describing the engine
+     */
+    public abstract String getName();
+
+    /**
+     * Estimates the cost of the full radix-2 FFT
+     *
+     * @param fftSize - the size of the transform
+     * @return - estimated number of floating point operations
+     */
+    public static long fullFftCost(int fftSize) {
+        return (long) (fftSize / 2) * log2(fftSize) * BUTTERFLY_COST
+                + fftSize;
+    }
+
+    /**
+     * Chooses the cheapest engine for the given bins, as estimated by the
+     * cost model
+     *
+     * @param fftSize - the size of the transform, a power of two
+     * @param frameSize - the number of samples of a frame, the rest of the
+     *            input is zero
+     * @param firstBin - the first bin needed
+     * @param lastBin - the bin after the last bin needed
+     * @return - the cheapest engine, or null if the full FFT is estimated to
+     *         be cheaper than any of them
+     */
+    public static SpectralEngine choose(
+            int fftSize,
+            int frameSize,
+            int firstBin,
+            int lastBin) {
+        int bins = lastBin - firstBin;
+        long best = fullFftCost(fftSize);
+        SpectralEngine engine = null;
+        long goertzel = (long) bins * (frameSize * GOERTZEL_STEP_COST + 10);
+        if (goertzel < best) {
+            best = goertzel;
+            engine = new Goertzel(fftSize, frameSize, firstBin, lastBin);
+        }
+        int bestQ = 0;
+        for (int q = 2; q <= fftSize / 2; q = q << 1) {
+            long cost = prunedCost(fftSize, q, bins);
+            if (cost < best) {
+                best = cost;
+                bestQ = q;
+            }
+        }
+        if (bestQ != 0) {
+            engine = new Pruned(fftSize, bestQ, firstBin, lastBin);
+        }
+        return engine;
+    }
+
+    /**
+     * Estimates the cost of the pruned FFT with sub-transforms of size q
+     */
+    private static long prunedCost(int fftSize, int q, int bins) {
+        long pairs = fftSize / q / 2;
+        return pairs
+                * ((long) (q / 2) * log2(q) * BUTTERFLY_COST + q + (long) bins
+                        * COMBINE_COST);
+    }
+
+    private static int log2(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    /**
+     * This engine runs the Goertzel recurrence for every bin over the
+     * non-zero samples of the frame
+     *
+     */
+    static class Goertzel extends SpectralEngine {
+
+        private int frameSize;
+        private double[] coeff, cos, sin;
+
+        Goertzel(int fftSize, int frameSize, int firstBin, int lastBin) {
+            super(fftSize, firstBin, lastBin);
+            this.frameSize = frameSize;
+            int bins = lastBin - firstBin;
+            coeff = new double[bins];
+            cos = new double[bins];
+            sin = new double[bins];
+            for (int b = 0; b < bins; b++) {
+                double w = 2 * Math.PI * (firstBin + b) / fftSize;
+                cos[b] = Math.cos(w);
+                sin[b] = Math.sin(w);
+                coeff[b] = 2 * cos[b];
+            }
+        }
+
+        @Override
+        public double[] transform(double[] input) {
+            double[] out = new double[fftSize << 1];
+            for (int b = 0; b < coeff.length; b++) {
+                double c = coeff[b], s1 = 0, s2 = 0;
+                for (int n = 0; n < frameSize; n++) {
+                    double s = input[n] + c * s1 - s2;
+                    s2 = s1;
+                    s1 = s;
+                }
+                // the result differs from the bin of the DFT by a phase
+                // factor, which does not change its magnitude
+                out[firstBin + b] = s1 - s2 * cos[b];
+                out[firstBin + b + fftSize] = s2 * sin[b];
+            }
+            return out;
+        }
+
+        @Override
+        public String getName() {
+            return "Goertzel";
+        }
+    }
+
+    /**
+     * This engine decomposes the FFT of size N into P = N / Q sub-sequences
+     * x_p[m] = x[p + P * m] of length Q, so that X[k] is the sum over p of
+     * W_N^(p * k) * Y_p[k mod Q], where Y_p is the FFT of x_p. As the input
+     * is real, the FFTs of x_2j and x_2j+1 are computed together as the FFT
+     * of x_2j + i * x_2j+1
+     *
+     */
+    static class Pruned extends SpectralEngine {
+
+        private int q, p;
+        private int[] bitReverse;
+        // twiddle factors of the sub-transform, e^(-2 pi i j / q)
+        private double[] subCos, subSin;
+        // twiddle factors W_N^(p * k) of every bin, indexed by bin * P + p
+        private double[] wCos, wSin;
+
+        Pruned(int fftSize, int q, int firstBin, int lastBin) {
+            super(fftSize, firstBin, lastBin);
+            this.q = q;
+            this.p = fftSize / q;
+            int bits = log2(q);
+            bitReverse = new int[q];
+            for (int i = 0; i < q; i++) {
+                bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+            }
+            subCos = new double[q / 2];
+            subSin = new double[q / 2];
+            for (int j = 0; j < q / 2; j++) {
+                subCos[j] = Math.cos(2 * Math.PI * j / q);
+                subSin[j] = -Math.sin(2 * Math.PI * j / q);
+            }
+            int bins = lastBin - firstBin;
+            wCos = new double[bins * p];
+            wSin = new double[bins * p];
+            for (int b = 0; b < bins; b++) {
+                for (int s = 0; s < p; s++) {
+                    // reduced modulo N to keep the argument small
+                    long e = ((long) s * (firstBin + b)) % fftSize;
+                    double w = 2 * Math.PI * e / fftSize;
+                    wCos[b * p + s] = Math.cos(w);
+                    wSin[b * p + s] = -Math.sin(w);
+                }
+            }
+        }
+
+        @Override
+        public double[] transform(double[] input) {
+            double[] out = new double[fftSize << 1];
+            double[] zr = new double[q], zi = new double[q];
+            int bins = lastBin - firstBin;
+            int mask = q - 1;
+            for (int s = 0; s < p; s = s + 2) {
+                for (int m = 0; m < q; m++) {
+                    zr[bitReverse[m]] = input[s + p * m];
+                    zi[bitReverse[m]] = input[s + 1 + p * m];
+                }
+                fft(zr, zi);
+                for (int b = 0; b < bins; b++) {
+                    int k = (firstBin + b) & mask;
+                    int kc = (q - k) & mask;
+                    // Y_s = (Z[k] + conj(Z[-k])) / 2 and
+                    // Y_s+1 = (Z[k] - conj(Z[-k])) / 2i
+                    double y0r = (zr[k] + zr[kc]) * 0.5;
+                    double y0i = (zi[k] - zi[kc]) * 0.5;
+                    double y1r = (zi[k] + zi[kc]) * 0.5;
+                    double y1i = (zr[kc] - zr[k]) * 0.5;
+                    int w = b * p + s;
+                    double c0 = wCos[w], s0 = wSin[w];
+                    double c1 = wCos[w + 1], s1 = wSin[w + 1];
+                    out[firstBin + b] +=
+                            y0r * c0 - y0i * s0 + y1r * c1 - y1i * s1;
+                    out[firstBin + b + fftSize] +=
+                            y0r * s0 + y0i * c0 + y1r * s1 + y1i * c1;
+                }
+            }
+            return out;
+        }
+
+        /**
+         * In place iterative radix-2 FFT of the bit reversed input
+         */
+        private void fft(double[] re, double[] im) {
+            for (int m = 2; m <= q; m = m << 1) {
+                int half = m >> 1;
+                int step = q / m;
+                for (int k = 0; k < q; k = k + m) {
+                    for (int j = 0; j < half; j++) {
+                        double wr = subCos[j * step], wi = subSin[j * step];
+                        int a = k + j, b = a + half;
+                        double tr = re[b] * wr - im[b] * wi;
+                        double ti = re[b] * wi + im[b] * wr;
+                        re[b] = re[a] - tr;
+                        im[b] = im[a] - ti;
+                        re[a] = re[a] + tr;
+                        im[a] = im[a] + ti;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "Pruned(Q=" + q + ")";
+        }
+    }
+
+}
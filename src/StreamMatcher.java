@@ -0,0 +1,323 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class matches an unbounded stream of audio, such as the standard input
+ * or a named pipe, against a set of reference {@ComparableAudioFile} while
+ * the stream is being read. The stream is fingerprinted incrementally in
+ * short segments, and after every segment the frames of the most recent
+ * window of the stream are compared with the reference files. A match is
+ * reported as soon as it is found, and is not reported again for the same
+ * reference file till the reference file stops matching for a whole window.
+ *
+ * Only the keys anchored at the frames within the window are retained, so the
+ * memory used does not grow with the length of the stream. The collisions of
+ * the window with every reference file are updated as the frames enter and
+ * leave the window, so a segment costs the lookups of the keys of its own
+ * frames, and only the reference files whose collisions have changed are
+ * compared again.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class StreamMatcher {
+
+    private static final String MATCH = "MATCH %s %s %.1f %.1f";
+    // length of the segments in which the stream is read, a multiple of the
+    // analysis frame that is short enough to report a match promptly
+    private static final int STREAMING_LENGTH = 1764 * 6;
+    // duration of the most recent part of the stream that is compared with
+    // the reference files, long enough to contain a 5 second match
+    private static final int WINDOW_IN_SECONDS = 10;
+
+    private AudioFile stream;
+    private List<ComparableAudioFile> references;
+    private PrintStream out;
+    private ComparableAudioFile query;
+    // keys anchored at the frames in the window, in a ring buffer indexed by
+    // the time of the frame modulo its length, along with the time of the
+    // frame whose keys a slot holds
+    private List<List<Integer>> window;
+    private int[] windowTime;
+    private int windowFrames;
+    // time of the first frame of the window
+    private int windowStart;
+    // the keys in the window, with the times of the frames they are anchored
+    // at in ascending order
+    private Map<Integer, List<Integer>> windowFingerprint =
+            new HashMap<Integer, List<Integer>>();
+    // true if the keys span several frames and are matched by their
+    // alignment instead of their collision timelines
+    private boolean landmark;
+    // for every reference file, the number of keys colliding with it of the
+    // frame in every slot of the window
+    private int[][] frameCollisions;
+    // for every reference file, the number of distinct keys of the window
+    // colliding with it at every frame of the file, and the timeline of the
+    // frames at which there is at least one
+    private int[][] referenceCollisions;
+    private CollisionTimeline[] referenceTimelines;
+    // true if the collisions with a reference file have changed since it was
+    // last compared, and true if it matched then
+    private boolean[] changed;
+    private boolean[] matching;
+    // time of the first frame after the window at which every reference file
+    // has last been matched, -1 if it is not matching
+    private int[] matchedUntil;
+
+    /**
+     * @param stream - {@AudioFile} from which the stream is read
+     * @param references - list of {@ComparableAudioFile} to be matched with
+     *            the stream
+     * @param out - stream to which the matches are reported
+     */
+    public StreamMatcher(
+            AudioFile stream,
+            List<ComparableAudioFile> references,
+            PrintStream out) {
+        this.stream = stream;
+        this.references = new ArrayList<ComparableAudioFile>(references);
+        this.out = out;
+        this.query =
+                ComparableAudioFiles.makeIncremental(stream.getShortName());
+        this.windowFrames =
+                (int) Math.ceil(WINDOW_IN_SECONDS
+                        / ComparableAudioFile.getFrameOffsetInSeconds());
+        this.window = new ArrayList<List<Integer>>(windowFrames);
+        this.windowTime = new int[windowFrames];
+        for (int i = 0; i < windowFrames; i++) {
+            window.add(new ArrayList<Integer>(4));
+            windowTime[i] = -1;
+        }
+        this.landmark =
+                SubFingerprintHashers.TYPES.LANDMARK == SubFingerprintHashers
+                        .getType();
+        int referenceCount = references.size();
+        this.frameCollisions = new int[referenceCount][];
+        this.referenceCollisions = new int[referenceCount][];
+        this.referenceTimelines = new CollisionTimeline[referenceCount];
+        this.changed = new boolean[referenceCount];
+        this.matching = new boolean[referenceCount];
+        this.matchedUntil = new int[referenceCount];
+        for (int i = 0; i < matchedUntil.length; i++) {
+            matchedUntil[i] = -1;
+        }
+    }
+
+    /**
+     * Reads the stream till its end, reporting the matches as they are found
+     */
+    public void run() {
+        int nextFrame = 0;
+        while (stream.hasNext()) {
+            query.appendSamples(stream.getNext(STREAMING_LENGTH));
+            int frameCount = query.getFrameCount();
+            if (frameCount == nextFrame) {
+                continue;
+            }
+            // the keys may be anchored at frames analyzed earlier
+            for (Map.Entry<Integer, List<Integer>> e : query.getFingerprint()
+                    .entrySet()) {
+                for (int t : e.getValue()) {
+                    addToWindow(e.getKey(), t);
+                }
+            }
+            // the keys are now held by the window
+            query.releaseAnalyzedFrames();
+            nextFrame = frameCount;
+            matchWindow(frameCount);
+        }
+        stream.close();
+    }
+
+    /**
+     * Adds a key anchored at the given time to the window, dropping the frame
+     * that the slot held before. A key anchored at a frame that has already
+     * left the window is ignored
+     */
+    private void addToWindow(int key, int time) {
+        int slot = time % windowFrames;
+        if (time < windowStart || windowTime[slot] > time) {
+            return;
+        }
+        if (windowTime[slot] != time) {
+            dropFrame(slot);
+            windowTime[slot] = time;
+        }
+        window.get(slot).add(key);
+        List<Integer> times = windowFingerprint.get(key);
+        boolean added = times == null;
+        if (added) {
+            times = new ArrayList<Integer>(2);
+            windowFingerprint.put(key, times);
+        }
+        // the keys of a segment may be anchored at frames analyzed earlier
+        int i = times.size();
+        while (i > 0 && times.get(i - 1) > time) {
+            i--;
+        }
+        times.add(i, time);
+        updateCollisions(key, slot, 1, added);
+    }
+
+    /**
+     * Drops the keys of the frame held by the given slot from the window
+     */
+    private void dropFrame(int slot) {
+        int time = windowTime[slot];
+        if (time == -1) {
+            return;
+        }
+        for (int key : window.get(slot)) {
+            List<Integer> times = windowFingerprint.get(key);
+            times.remove(Integer.valueOf(time));
+            boolean removed = times.isEmpty();
+            if (removed) {
+                windowFingerprint.remove(key);
+            }
+            updateCollisions(key, slot, -1, removed);
+        }
+        window.get(slot).clear();
+        windowTime[slot] = -1;
+    }
+
+    /**
+     * Updates the collisions of every reference file containing the given key
+     * with the window, as the key of the frame in the given slot enters or
+     * leaves the window
+     *
+     * @param key - key of the frame
+     * @param slot - slot of the frame in the window
+     * @param delta - 1 if the key enters the window, -1 if it leaves it
+     * @param distinct - true if the window has no other occurrence of the key
+     */
+    private void updateCollisions(
+            int key,
+            int slot,
+            int delta,
+            boolean distinct) {
+        if (ComparableAudioFile.isStopped(key)) {
+            return;
+        }
+        for (int r = 0; r < references.size(); r++) {
+            ComparableAudioFile ref = references.get(r);
+            List<Integer> refTimes = ref.getFingerprint().get(key);
+            if (refTimes == null) {
+                continue;
+            }
+            changed[r] = true;
+            if (landmark) {
+                continue;
+            }
+            if (frameCollisions[r] == null) {
+                frameCollisions[r] = new int[windowFrames];
+                referenceCollisions[r] = new int[ref.getFrameCount()];
+                referenceTimelines[r] =
+                        new CollisionTimeline(ref.getFrameCount());
+            }
+            frameCollisions[r][slot] += delta;
+            if (!distinct) {
+                continue;
+            }
+            int[] counts = referenceCollisions[r];
+            for (int i = 0, n = refTimes.size(); i < n; i++) {
+                int t = refTimes.get(i);
+                if (t >= counts.length) {
+                    counts = Arrays.copyOf(counts, t + 1);
+                    referenceCollisions[r] = counts;
+                }
+                counts[t] += delta;
+                if (counts[t] == 0) {
+                    referenceTimelines[r].remove(t);
+                } else if (delta > 0 && counts[t] == 1) {
+                    referenceTimelines[r].add(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the frames in the window that ends before the given time with
+     * the reference files whose collisions with it have changed, and reports
+     * the new matches
+     *
+     * @param end - time of the first frame after the window
+     */
+    private void matchWindow(int end) {
+        int start = Math.max(0, end - windowFrames);
+        for (int t = windowStart; t < start; t++) {
+            if (windowTime[t % windowFrames] == t) {
+                dropFrame(t % windowFrames);
+            }
+        }
+        windowStart = start;
+        for (int r = 0; r < references.size(); r++) {
+            ComparableAudioFile ref = references.get(r);
+            double[] matchPosition = null;
+            if (changed[r]) {
+                changed[r] = false;
+                matchPosition = computeMatch(r, start, end);
+                matching[r] = matchPosition != null;
+            }
+            if (!matching[r]) {
+                if (matchedUntil[r] != -1
+                        && end - matchedUntil[r] >= windowFrames) {
+                    matchedUntil[r] = -1;
+                }
+                continue;
+            }
+            // a reference file whose collisions have not changed has matched
+            // before, and so is not reported again
+            if (matchedUntil[r] == -1) {
+                out.println(String.format(MATCH, query.getFileName(),
+                        ref.getFileName(), matchPosition[0],
+                        matchPosition[1]));
+                out.flush();
+            }
+            matchedUntil[r] = end;
+        }
+    }
+
+    /**
+     * Finds the matching segment between the window and the given reference
+     * file. The collision timeline of the window is made of the times of its
+     * frames relative to the start of the window, so that it spans the window
+     * and not the stream, and the time of the match is made relative to the
+     * start of the stream again
+     *
+     * @param r - index of the reference file
+     * @param start - time of the first frame of the window
+     * @param end - time of the first frame after the window
+     * @return - the times of the match in the stream and in the reference
+     *         file, or null if there is no match
+     */
+    private double[] computeMatch(int r, int start, int end) {
+        ComparableAudioFile ref = references.get(r);
+        if (landmark) {
+            return ComparableAudioFile.computeFragmentMatch(windowFingerprint,
+                    0, ref.getFingerprint(), ref.getFrameCount());
+        }
+        CollisionTimeline s = new CollisionTimeline(end - start);
+        for (int t = start; t < end; t++) {
+            int slot = t % windowFrames;
+            if (windowTime[slot] == t && frameCollisions[r][slot] > 0) {
+                s.add(t - start);
+            }
+        }
+        double[] matchPosition =
+                ComparableAudioFile.computeMatchFromCollisionTimes(s,
+                        referenceTimelines[r]);
+        if (matchPosition != null) {
+            matchPosition[0] +=
+                    start * ComparableAudioFile.getFrameOffsetInSeconds();
+        }
+        return matchPosition;
+    }
+
+}
@@ -0,0 +1,58 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This interface is implemented by the strategies that compute the keys of a
+ * fingerprint from the frequency domain data of the analysis frames of an
+ * audio file. The frames are given to an instance in the order of time, so
+ * that an instance may combine the data of several frames into a key. An
+ * instance is used for a single audio file.
+ *
+ * Besides the keys, a strategy computes a 32 bit sub-fingerprint for every
+ * frame, which is used where the frames are compared bit by bit.
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public interface SubFingerprintHasher {
+
+    /**
+     * @return - the first bin of the frequency domain data read
+     */
+    int getFirstBin();
+
+    /**
+     * @return - the bin after the last bin of the frequency domain data read
+     */
+    int getLastBin();
+
+    /**
+     * @return - true if the positions of the least reliable bits of the
+     *         sub-fingerprints are computed, which requires the keys to be
+     *         the sub-fingerprints themselves
+     */
+    boolean hasWeakBits();
+
+    /**
+     * Stores the keys computed for the given analysis frame in the given
+     * fingerprint, each along with the time to which it is anchored, and
+     * computes the sub-fingerprint of the frame
+     *
+     * @param spectrum - frequency domain data of the frame, with the real
+     *            components followed by the imaginary components
+     * @param time - relative time of the frame
+     * @param fingerprint - the hash map into which the keys are stored
+     * @param weakBits - if the weak bits are computed, weakBits[0] is set to
+     *            the positions of the least reliable bits of the
+     *            sub-fingerprint
+     * @return - the sub-fingerprint of the frame
+     */
+    int update(
+            double[] spectrum,
+            int time,
+            Map<Integer, List<Integer>> fingerprint,
+            int[] weakBits);
+
+}
@@ -0,0 +1,128 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * Factory class with method(s) to create specific instances of
+ * {@SubFingerprintHasher}
+ * 
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ * 
+ */
+public class SubFingerprintHashers {
+
+    /**
+     * 
+     * Enumeration of the sub-fingerprint strategies supported by the
+     * {@SubFingerprintHashers} class.
+     * 
+     * <pre>
+     * BARK - Default, a hash of the deltas of the average power of
+     *        consecutive Bark bands of every frame
+     * MAXPEAK - a hash of the bins with the peak amplitude in four frequency
+     *           ranges of every frame
+     * LANDMARK - hashes of pairs of spectral peaks of nearby frames, see
+     *            {@LandmarkHasher}
+     * </pre>
+     * 
+     */
+    public enum TYPES {
+        BARK, MAXPEAK, LANDMARK
+    }
+
+    private static TYPES type = TYPES.BARK;
+
+    /**
+     * This is an optional method used to set the strategy. If no strategy is
+     * set, BARK is used
+     * @param t - {@TYPES}
+     */
+    public static void setType(TYPES t) {
+        type = t;
+    }
+
+    /**
+     * @return - the strategy used
+     */
+    public static TYPES getType() {
+        return type;
+    }
+
+    /**
+     * static factory method to make a new {@SubFingerprintHasher} for a
+     * single audio file, the implementation chosen is dependent on the type
+     * 
+     * @return {@SubFingerprintHasher} of the type set
+     */
+    public static SubFingerprintHasher make() {
+        if (TYPES.LANDMARK == type) {
+            return new LandmarkHasher();
+        } else if (TYPES.MAXPEAK == type) {
+            return new MaxPeakHasher();
+        } else {
+            return new BarkHasher();
+        }
+    }
+
+    /**
+     * This implementation uses the sub-fingerprint of every frame computed by
+     * {@AcousticAnalyzer#updateFingerprintUsingAverageDeltaPowerDiff} as its
+     * key
+     * 
+     */
+    private static class BarkHasher implements SubFingerprintHasher {
+
+        public int getFirstBin() {
+            return AcousticAnalyzer.FIRST_ANALYZED_BIN;
+        }
+
+        public int getLastBin() {
+            return AcousticAnalyzer.LAST_ANALYZED_BIN;
+        }
+
+        public boolean hasWeakBits() {
+            return true;
+        }
+
+        public int update(
+                double[] spectrum,
+                int time,
+                Map<Integer, List<Integer>> fingerprint,
+                int[] weakBits) {
+            return AcousticAnalyzer.updateFingerprintUsingAverageDeltaPowerDiff(
+                    spectrum, time, fingerprint, weakBits);
+        }
+    }
+
+    /**
+     * This implementation uses the sub-fingerprint of every frame computed by
+     * {@AcousticAnalyzer#updateFingerprintUsingMaxPeak} as its key
+     * 
+     */
+    private static class MaxPeakHasher implements SubFingerprintHasher {
+
+        public int getFirstBin() {
+            return AcousticAnalyzer.FIRST_MAX_PEAK_BIN;
+        }
+
+        public int getLastBin() {
+            return AcousticAnalyzer.LAST_MAX_PEAK_BIN;
+        }
+
+        public boolean hasWeakBits() {
+            return false;
+        }
+
+        public int update(
+                double[] spectrum,
+                int time,
+                Map<Integer, List<Integer>> fingerprint,
+                int[] weakBits) {
+            return AcousticAnalyzer.updateFingerprintUsingMaxPeak(spectrum,
+                    time, fingerprint);
+        }
+    }
+
+}
@@ -0,0 +1,418 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class generates a corpus of .wav files with a known ground truth, on
+ * which the accuracy of the matching can be measured. The corpus has a
+ * directory of references and a directory of queries. Every other query
+ * embeds a segment of a reference, 6 to 10 seconds long, in audio of its own,
+ * and is then altered in one of the ways of {@TRANSFORMS} as it would be by a
+ * change of gain, resampling or re-encoding. The other queries share nothing
+ * with the references. The audio is made of random notes with harmonics and
+ * a little noise, so that its spectrum changes from frame to frame like that
+ * of music.
+ *
+ * The embedded segments are listed in the file truth.txt of the corpus, one
+ * per line:
+ *
+ * <pre>
+ * query reference query offset reference offset length transform
+ * </pre>
+ *
+ * where the offsets and the length are in seconds.
+ *
+ * Usage: java SyntheticCorpus directory [references] [queries] [seed]
+ *
+ * @author: Magesh Ramachandran
+ * @author: Mayank Narashiman
+ * @author: Narendran K.P
+ *
+ */
+public class SyntheticCorpus {
+
+    /**
+     * The alterations of a query embedding a segment of a reference
+     *
+     * <pre>
+     * NONE        - written as it is
+     * GAIN        - amplified or attenuated
+     * RESAMPLE22K - resampled to 22.05 kHz
+     * RESAMPLE48K - resampled to 48 kHz
+     * REQUANTIZE  - requantized to 8 bits
+     * NOISE       - mixed with white noise at 10 dB below the audio
+     * STEREO      - written as two channels that differ by noise
+     * </pre>
+     *
+     */
+    public enum TRANSFORMS {
+        NONE, GAIN, RESAMPLE22K, RESAMPLE48K, REQUANTIZE, NOISE, STEREO
+    }
+
+    public static final String REFERENCE_DIRECTORY = "references";
+    public static final String QUERY_DIRECTORY = "queries";
+    public static final String TRUTH_FILE = "truth.txt";
+
+    private static final int SAMPLING_RATE = 44100;
+    private static final int REFERENCE_SECONDS = 30;
+    private static final int QUERY_SECONDS = 15;
+    private static final int MIN_SEGMENT_SECONDS = 6;
+    private static final int MAX_SEGMENT_SECONDS = 10;
+    private static final int DEFAULT_REFERENCES = 20;
+    private static final int DEFAULT_QUERIES = 40;
+
+    /**
+     * A segment of a reference embedded in a query
+     *
+     */
+    public static class Embedding {
+        private String query, reference;
+        private double queryOffset, referenceOffset, length;
+        private TRANSFORMS transform;
+
+        private Embedding(
+                String query,
+                String reference,
+                double queryOffset,
+                double referenceOffset,
+                double length,
+                TRANSFORMS transform) {
+            this.query = query;
+            this.reference = reference;
+            this.queryOffset = queryOffset;
+            this.referenceOffset = referenceOffset;
+            this.length = length;
+            this.transform = transform;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        /**
+         * @return - the time in seconds at which the segment begins in the
+         *         query
+         */
+        public double getQueryOffset() {
+            return queryOffset;
+        }
+
+        /**
+         * @return - the time in seconds at which the segment begins in the
+         *         reference
+         */
+        public double getReferenceOffset() {
+            return referenceOffset;
+        }
+
+        /**
+         * @return - the length of the segment in seconds
+         */
+        public double getLength() {
+            return length;
+        }
+
+        public TRANSFORMS getTransform() {
+            return transform;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("ERROR: usage: java SyntheticCorpus directory"
+                    + " [references] [queries] [seed]");
+            System.exit(-1);
+        }
+        int references =
+                args.length > 1 ? Integer.parseInt(args[1])
+                        : DEFAULT_REFERENCES;
+        int queries =
+                args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_QUERIES;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        generate(new File(args[0]), references, queries, seed);
+    }
+
+    /**
+     * Generates a corpus in the given directory, overwriting the files of an
+     * earlier corpus with the same names
+     *
+     * @param dir - directory of the corpus, created if it does not exist
+     * @param referenceCount - the number of references
+     * @param queryCount - the number of queries, half of which embed a
+     *            segment of a reference
+     * @param seed - seed of the random choices, the same seed generates the
+     *            same corpus
+     * @throws IOException
+     */
+    public static void generate(
+            File dir,
+            int referenceCount,
+            int queryCount,
+            long seed) throws IOException {
+        File refDir = new File(dir, REFERENCE_DIRECTORY);
+        File queryDir = new File(dir, QUERY_DIRECTORY);
+        if (!refDir.isDirectory() && !refDir.mkdirs()
+                || !queryDir.isDirectory() && !queryDir.mkdirs()) {
+            throw new RuntimeException("ERROR: The directory " + dir
+                    + " could not be created");
+        }
+        Random random = new Random(seed);
+        double[][] references = new double[referenceCount][];
+        for (int i = 0; i < referenceCount; i++) {
+            references[i] =
+                    synthesize(random, REFERENCE_SECONDS * SAMPLING_RATE);
+            write(new File(refDir, referenceName(i)), new double[][] {
+                    references[i] }, SAMPLING_RATE, 2);
+        }
+
+        PrintWriter truth = new PrintWriter(new File(dir, TRUTH_FILE));
+        try {
+            TRANSFORMS[] transforms = TRANSFORMS.values();
+            for (int i = 0; i < queryCount; i++) {
+                String name = String.format("q%03d.wav", i);
+                double[] query =
+                        synthesize(random, QUERY_SECONDS * SAMPLING_RATE);
+                TRANSFORMS transform = TRANSFORMS.NONE;
+                if (i % 2 == 0 && referenceCount > 0) {
+                    int ref = random.nextInt(referenceCount);
+                    int length =
+                            (MIN_SEGMENT_SECONDS + random
+                                    .nextInt(MAX_SEGMENT_SECONDS
+                                            - MIN_SEGMENT_SECONDS + 1))
+                                    * SAMPLING_RATE;
+                    int refOffset =
+                            random.nextInt(references[ref].length - length);
+                    int queryOffset = random.nextInt(query.length - length);
+                    System.arraycopy(references[ref], refOffset, query,
+                            queryOffset, length);
+                    transform = transforms[(i / 2) % transforms.length];
+                    truth.println(String.format("%s %s %.4f %.4f %.4f %s",
+                            name, referenceName(ref), (double) queryOffset
+                                    / SAMPLING_RATE, (double) refOffset
+                                    / SAMPLING_RATE, (double) length
+                                    / SAMPLING_RATE, transform));
+                }
+                writeTransformed(new File(queryDir, name), query, transform,
+                        random);
+            }
+        } finally {
+            truth.close();
+        }
+        if (truth.checkError()) {
+            throw new RuntimeException("ERROR: Error while writing the file "
+                    + TRUTH_FILE);
+        }
+    }
+
+    /**
+     * Reads the segments embedded in the queries of a corpus
+     *
+     * @param dir - directory of the corpus
+     * @return - list of the {@Embedding} listed in its truth file
+     * @throws IOException
+     */
+    public static List<Embedding> readTruth(File dir) throws IOException {
+        List<Embedding> embeddings = new ArrayList<Embedding>();
+        BufferedReader in =
+                new BufferedReader(new FileReader(new File(dir, TRUTH_FILE)));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.trim().split("\\s+");
+                if (f.length != 6) {
+                    throw new RuntimeException("ERROR: Invalid line in "
+                            + TRUTH_FILE + ": " + line);
+                }
+                embeddings.add(new Embedding(f[0], f[1], Double
+                        .parseDouble(f[2]), Double.parseDouble(f[3]), Double
+                        .parseDouble(f[4]), TRANSFORMS.valueOf(f[5])));
+            }
+        } finally {
+            in.close();
+        }
+        return embeddings;
+    }
+
+    private static String referenceName(int i) {
+        return String.format("r%03d.wav", i);
+    }
+
+    /**
+     * Synthesizes audio of random notes, each of one to three tones with two
+     * harmonics and a decaying envelope, over a little white noise
+     *
+     * @param random - source of the random choices
+     * @param length - the number of samples at 44.1 kHz
+     * @return - the samples in 16 bit units
+     */
+    static double[] synthesize(Random random, int length) {
+        double[] samples = new double[length];
+        int start = 0;
+        while (start < length) {
+            int noteLength =
+                    (int) (SAMPLING_RATE * (0.25 + 0.35 * random
+                            .nextDouble()));
+            int end = Math.min(length, start + noteLength);
+            int tones = 1 + random.nextInt(3);
+            for (int t = 0; t < tones; t++) {
+                double f = 150 * Math.pow(8, random.nextDouble());
+                double amplitude = 2000 + 4000 * random.nextDouble();
+                double phase = 2 * Math.PI * random.nextDouble();
+                for (int n = start; n < end; n++) {
+                    double time = (double) (n - start) / SAMPLING_RATE;
+                    double w = 2 * Math.PI * f * time + phase;
+                    samples[n] +=
+                            amplitude
+                                    * Math.exp(-2 * time)
+                                    * (Math.sin(w) + 0.5 * Math.sin(2 * w)
+                                            + 0.25 * Math.sin(3 * w));
+                }
+            }
+            start = end;
+        }
+        for (int n = 0; n < length; n++) {
+            samples[n] += 200 * random.nextGaussian();
+        }
+        return samples;
+    }
+
+    /**
+     * Alters the given audio in the given way and writes it
+     *
+     * @param f - file written
+     * @param samples - the samples at 44.1 kHz in 16 bit units, which may be
+     *            altered in place
+     * @param transform - {@TRANSFORMS} applied
+     * @param random - source of the random choices
+     * @throws IOException
+     */
+    static void writeTransformed(
+            File f,
+            double[] samples,
+            TRANSFORMS transform,
+            Random random) throws IOException {
+        switch (transform) {
+        case GAIN:
+            double gain = random.nextBoolean() ? 0.5 : 1.6;
+            for (int n = 0; n < samples.length; n++) {
+                samples[n] *= gain;
+            }
+            write(f, new double[][] { samples }, SAMPLING_RATE, 2);
+            break;
+        case RESAMPLE22K:
+            // averages every two samples, a crude low-pass filter
+            double[] halved = new double[samples.length / 2];
+            for (int n = 0; n < halved.length; n++) {
+                halved[n] = (samples[2 * n] + samples[2 * n + 1]) / 2;
+            }
+            write(f, new double[][] { halved }, SAMPLING_RATE / 2, 2);
+            break;
+        case RESAMPLE48K:
+            write(f, new double[][] { resample(samples, 48000) }, 48000, 2);
+            break;
+        case REQUANTIZE:
+            write(f, new double[][] { samples }, SAMPLING_RATE, 1);
+            break;
+        case NOISE:
+            double power = 0;
+            for (double s : samples) {
+                power += s * s;
+            }
+            double noise = Math.sqrt(power / samples.length / 10);
+            for (int n = 0; n < samples.length; n++) {
+                samples[n] += noise * random.nextGaussian();
+            }
+            write(f, new double[][] { samples }, SAMPLING_RATE, 2);
+            break;
+        case STEREO:
+            double[] other = new double[samples.length];
+            for (int n = 0; n < samples.length; n++) {
+                other[n] = 0.7 * samples[n] + 300 * random.nextGaussian();
+            }
+            write(f, new double[][] { samples, other }, SAMPLING_RATE, 2);
+            break;
+        default:
+            write(f, new double[][] { samples }, SAMPLING_RATE, 2);
+        }
+    }
+
+    /**
+     * Resamples 44.1 kHz audio to the given rate by linear interpolation
+     */
+    private static double[] resample(double[] samples, int rate) {
+        double step = (double) SAMPLING_RATE / rate;
+        int length = (int) ((samples.length - 1) / step) + 1;
+        double[] resampled = new double[length];
+        for (int i = 0; i < length; i++) {
+            double position = i * step;
+            int left = (int) position;
+            int right = Math.min(left + 1, samples.length - 1);
+            resampled[i] =
+                    samples[left] + (samples[right] - samples[left])
+                            * (position - left);
+        }
+        return resampled;
+    }
+
+    /**
+     * Writes the given channels as a PCM .wav file, clipping the samples to
+     * the range of 16 bits. Samples of one byte are unsigned, as in the .wav
+     * format
+     *
+     * @param f - file written
+     * @param channels - the samples of every channel, in 16 bit units
+     * @param rate - sampling rate in Hz
+     * @param bytesPerSample - 1 or 2
+     * @throws IOException
+     */
+    private static void write(
+            File f,
+            double[][] channels,
+            int rate,
+            int bytesPerSample) throws IOException {
+        int frames = channels[0].length;
+        int blockAlign = channels.length * bytesPerSample;
+        int dataLength = frames * blockAlign;
+        ByteBuffer buf =
+                ByteBuffer.allocate(44 + dataLength).order(
+                        ByteOrder.LITTLE_ENDIAN);
+        buf.put("RIFF".getBytes()).putInt(36 + dataLength);
+        buf.put("WAVE".getBytes());
+        buf.put("fmt ".getBytes()).putInt(16);
+        buf.putShort((short) 1).putShort((short) channels.length);
+        buf.putInt(rate).putInt(rate * blockAlign);
+        buf.putShort((short) blockAlign).putShort((short) (8 * bytesPerSample));
+        buf.put("data".getBytes()).putInt(dataLength);
+        for (int n = 0; n < frames; n++) {
+            for (double[] channel : channels) {
+                long val = Math.round(channel[n]);
+                val = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, val));
+                if (bytesPerSample == 1) {
+                    buf.put((byte) ((val >> 8) + 128));
+                } else {
+                    buf.putShort((short) val);
+                }
+            }
+        }
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(buf.array());
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -1,9 +1,12 @@
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.FileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * 
@@ -36,11 +39,33 @@ public class WavFile extends AudioFile {
     private int bpsAggregate;
     private String fileName, shortName;
     private RandomAccessFile rf;
-    private FileChannel ch;
+    private ReadableByteChannel ch;
+    // true if the data is read from a stream of unknown length
+    private boolean isStream;
+    private boolean isEndOfStream;
     byte[] fileData;
     ByteBuffer byteBufferForStreaming;
     boolean isFirstOrLastAccess = true;
 
+    // number of frames of the file held by the buffer used by read
+    private static final int READ_BUFFER_FRAMES = 8192;
+
+    // state of read, which converts the samples one at a time: the buffer of
+    // the bytes read from the file, the source sample last read, and the
+    // state of the conversion to the canonical sampling rate
+    private ByteBuffer readBuffer;
+    private double conversionFactorExact;
+    private double sourceSample;
+    // upsampling: the number of zero samples left to be inserted after the
+    // last source sample
+    private int zerosOwed;
+    // downsampling: the number of canonicalized samples returned, and the
+    // two source samples around the position of the next one
+    private long canonicalIndex;
+    private long leftIndex;
+    private double sampleAtLeft, sampleAtRight;
+    private boolean hasSampleAtRight;
+
     // constructor
     public WavFile(String fName) throws IOException {
         this.fileName = fName;
@@ -66,20 +91,264 @@ public class WavFile extends AudioFile {
         rf.seek(dataChunkIdx);
     }
 
+    /**
+     * Constructs an instance that reads from the given stream, such as the
+     * standard input or a named pipe, till the end of the stream. If the
+     * stream does not begin with a RIFF header, it is read as raw samples in
+     * the canonical format (16 bit little endian, single channel, 44.1 Khz)
+     * 
+     * @param in - stream from which the audio is read
+     * @param name - name used to refer to the stream
+     * @throws IOException
+     */
+    public WavFile(InputStream in, String name) throws IOException {
+        this.fileName = name;
+        this.shortName = name;
+        this.isStream = true;
+        PushbackInputStream pin = new PushbackInputStream(in, 80);
+        byte[] headerData = new byte[80];
+        int len = 0, n;
+        while (len < 80 && (n = pin.read(headerData, len, 80 - len)) > 0) {
+            len = len + n;
+        }
+        if (len >= 12
+                && CHUNK_RIFF.equals(readStringChunks(headerData, 0, 3))) {
+            readHeaderChunks(headerData);
+            if (!isAudioFileFormatValid()) {
+                throwException(String.format(UNSUPPORTED_FILE_FORMAT, name));
+            }
+            pin.unread(headerData, dataChunkIdx, len - dataChunkIdx);
+        } else {
+            riffType = "WAVE";
+            noOfChannels = 1;
+            samplingRate = (int) CANONICAL_SAMPLING_RATE;
+            significantBitsPerSecond = 16;
+            averageBps = samplingRate * 2;
+            bytesPerChannel = 2;
+            bpsAggregate = 2;
+            pin.unread(headerData, 0, len);
+        }
+        // the length given in the header of a stream is not reliable
+        totalDataLength = Integer.MAX_VALUE;
+        ch = Channels.newChannel(pin);
+    }
+
     /**
      * To check if there is more data to be streamed
      * @return - true if there is more data to be streamed, false otherwise
      */
     public boolean hasNext() {
+        if (hasBufferedSample()) {
+            return true;
+        }
+        if (isStream) {
+            return !isEndOfStream;
+        }
         return (dataLengthRead < totalDataLength);
     }
 
+    /**
+     * @return - true if read has read ahead the bytes of the next
+     *         canonicalized sample, false otherwise
+     */
+    private boolean hasBufferedSample() {
+        if (readBuffer == null) {
+            return false;
+        }
+        if (readBuffer.remaining() >= bpsAggregate || zerosOwed > 0) {
+            return true;
+        }
+        return conversionFactorExact == 0.91875
+                && (hasSampleAtRight || canonicalIndex > 0
+                        && (long) (canonicalIndex / conversionFactorExact)
+                                <= leftIndex);
+    }
+
+    /**
+     * Converts the next samples straight into the given buffer, reusing a
+     * buffer of the bytes read from the file, so that no memory is allocated
+     * once the first samples have been read. The samples are converted to the
+     * canonical sampling rate across the whole file rather than a segment at
+     * a time
+     * 
+     * @see AudioFile#read(float[], int, int)
+     */
+    @Override
+    public int read(float[] dst, int off, int len) {
+        int n = 0;
+        while (n < len && nextCanonicalSample()) {
+            dst[off + n++] = (float) sourceSample;
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    /**
+     * @see WavFile#read(float[], int, int)
+     * @see AudioFile#read(short[], int, int)
+     */
+    @Override
+    public int read(short[] dst, int off, int len) {
+        int n = 0;
+        while (n < len && nextCanonicalSample()) {
+            dst[off + n++] = toShort(sourceSample);
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    /**
+     * Converts the next canonicalized sample into sourceSample, as
+     * convertToCanonicalForm does for a segment
+     * 
+     * @return - false at the end of the audio, true otherwise
+     */
+    private boolean nextCanonicalSample() {
+        if (readBuffer == null) {
+            startReading();
+        }
+        if (conversionFactorExact == 1) {
+            return nextSourceSample();
+        } else if (conversionFactorExact == 0.91875) {
+            return nextDownsampledSample();
+        }
+        if (zerosOwed > 0) {
+            zerosOwed--;
+            sourceSample = 0;
+            return true;
+        }
+        if (!nextSourceSample()) {
+            return false;
+        }
+        zerosOwed = (int) conversionFactorExact - 1;
+        return true;
+    }
+
+    /**
+     * Interpolates the next downsampled sample between the two source samples
+     * around its position, as downSample does
+     * 
+     * @return - false at the end of the audio, true otherwise
+     */
+    private boolean nextDownsampledSample() {
+        if (canonicalIndex == 0 && leftIndex == 0 && !hasSampleAtRight) {
+            if (!nextSourceSample()) {
+                return false;
+            }
+            sampleAtLeft = sourceSample;
+            hasSampleAtRight = nextSourceSample();
+            sampleAtRight = hasSampleAtRight ? sourceSample : sampleAtLeft;
+        }
+        double currentIndex = canonicalIndex / conversionFactorExact;
+        while (leftIndex < (long) currentIndex) {
+            if (!hasSampleAtRight) {
+                return false;
+            }
+            leftIndex++;
+            sampleAtLeft = sampleAtRight;
+            hasSampleAtRight = nextSourceSample();
+            sampleAtRight = hasSampleAtRight ? sourceSample : sampleAtLeft;
+        }
+        canonicalIndex++;
+        sourceSample =
+                (sampleAtRight - sampleAtLeft) * (currentIndex - leftIndex)
+                        + sampleAtLeft;
+        return true;
+    }
+
+    /**
+     * Checks the sampling rate and allocates the buffer used by read
+     */
+    private void startReading() {
+        conversionFactorExact = CANONICAL_SAMPLING_RATE / samplingRate;
+        if (conversionFactorExact != 0.91875 && conversionFactorExact != 1
+                && conversionFactorExact != 2 && conversionFactorExact != 4) {
+            throwException(UNSUPPORTED_SAMPLING_RATE);
+        }
+        if (bytesPerChannel != 1 && bytesPerChannel != 2) {
+            throwException(String.format(BPS_NOT_SUPPORTED, bytesPerChannel));
+        }
+        readBuffer = ByteBuffer.allocate(READ_BUFFER_FRAMES * bpsAggregate);
+        readBuffer.flip();
+    }
+
+    /**
+     * Reads the next source sample into sourceSample, combining the channels
+     * as extractChannelData does, and refills the buffer once it holds less
+     * than a frame
+     * 
+     * @return - false at the end of the audio, true otherwise
+     */
+    private boolean nextSourceSample() {
+        if (readBuffer.remaining() < bpsAggregate && !fillReadBuffer()) {
+            return false;
+        }
+        double right = nextChannelValue();
+        if (noOfChannels == 1) {
+            sourceSample = right;
+        } else {
+            double left = nextChannelValue();
+            sourceSample = (right + left) / 2;
+        }
+        return true;
+    }
+
+    /**
+     * @return - the value of the next channel of the frame in the buffer
+     */
+    private int nextChannelValue() {
+        byte b = readBuffer.get();
+        if (bytesPerChannel == 1) {
+            return (b & 0x80) > 0 ? b + 128 : b - 128;
+        }
+        return (b & 0xFF) | readBuffer.get() << 8;
+    }
+
+    /**
+     * Reads more bytes into the buffer, keeping the bytes of a partial frame.
+     * Reading from a stream blocks till a whole frame is read or the stream
+     * ends
+     * 
+     * @return - true if the buffer holds at least a frame, false otherwise
+     */
+    private boolean fillReadBuffer() {
+        readBuffer.compact();
+        if (!isStream) {
+            int framesLeft = totalDataLength - dataLengthRead;
+            int framesHeld = readBuffer.position() / bpsAggregate;
+            int frames =
+                    Math.min(framesLeft, READ_BUFFER_FRAMES - framesHeld);
+            readBuffer.limit(readBuffer.position() + frames * bpsAggregate);
+        }
+        int start = readBuffer.position();
+        try {
+            while (readBuffer.position() < bpsAggregate
+                    && readBuffer.hasRemaining()) {
+                if (ch.read(readBuffer) < 0) {
+                    isEndOfStream = true;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            isEndOfStream = true;
+        }
+        if (!isStream) {
+            // a file shorter than its header tells ends here
+            dataLengthRead =
+                    isEndOfStream ? totalDataLength : dataLengthRead
+                            + (readBuffer.position() - start) / bpsAggregate;
+        }
+        readBuffer.flip();
+        return readBuffer.remaining() >= bpsAggregate;
+    }
+
     /**
      * Reads the no of bytes corresponding to the requested number of samples
      * and returns the requested number of samples in the canonicalized form
      * @return - requested number of samples in the canonicalized form
      */
     public double[] getNext(int streamingLength) {
+        if (isStream) {
+            return getNextFromStream(streamingLength);
+        }
         int extractLen = streamingLength;
         int bytesToBeStreamed = streamingLength * bpsAggregate;
         int dataLeft = (totalDataLength - dataLengthRead) * bpsAggregate;
@@ -100,17 +369,54 @@ public class WavFile extends AudioFile {
             // do nothing
         }
         dataLengthRead = dataLengthRead + streamingLength;
-        return extractChannelData(fileData, extractLen);
+        return extractChannelData(fileData, fileData.length, extractLen);
+    }
+
+    /**
+     * Blocks till the requested number of samples are read from the stream or
+     * the stream ends, and returns the samples read in the canonicalized form
+     * @return - samples read in the canonicalized form
+     */
+    private double[] getNextFromStream(int streamingLength) {
+        int bytesToBeStreamed = streamingLength * bpsAggregate;
+        if (fileData == null || fileData.length != bytesToBeStreamed) {
+            fileData = new byte[bytesToBeStreamed];
+            byteBufferForStreaming = ByteBuffer.wrap(fileData);
+        }
+        byteBufferForStreaming.clear();
+        try {
+            while (byteBufferForStreaming.hasRemaining()) {
+                if (ch.read(byteBufferForStreaming) < 0) {
+                    isEndOfStream = true;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            isEndOfStream = true;
+        }
+        int bytesRead = byteBufferForStreaming.position();
+        bytesRead = bytesRead - bytesRead % bpsAggregate;
+        if (bytesRead == 0) {
+            return new double[0];
+        }
+        int extractLen = bytesRead / bpsAggregate;
+        return extractChannelData(fileData, bytesRead, extractLen);
     }
 
     /**
      * closes the file channel and the RandomAccessFile objects used for
-     * reading the audio file
+     * reading the audio file, and releases the buffers used for reading it,
+     * as the instance may outlive the reading of the file
      */
     public void close() {
+        fileData = null;
+        byteBufferForStreaming = null;
+        readBuffer = null;
         try {
             ch.close();
-            rf.close();
+            if (rf != null) {
+                rf.close();
+            }
         } catch (IOException e) {
             throw new RuntimeException("ERROR: Error while closing the file"
                     + shortName);
@@ -217,16 +523,17 @@ public class WavFile extends AudioFile {
      * endian data into a signed 16-bit int and combines left and right
      * channels by averaging them together.
      * @param fileData
+     * @param byteCount - number of bytes of fileData to be converted
      * @param lengthForAChannel
      * @return - double[] of audio sample data in canonical form
      */
-    private double[] extractChannelData(byte[] fileData,
+    private double[] extractChannelData(byte[] fileData, int byteCount,
             int lengthForAChannel) {
         int idx = 0, val = 0;
         boolean isSingleChannel = (noOfChannels == 1);
         double[] mergedSamples = new double[lengthForAChannel];
         double right = 0, left = 0;
-        for (int i = 0; i < fileData.length; i = i + bytesPerChannel) {
+        for (int i = 0; i < byteCount; i = i + bytesPerChannel) {
             if (bytesPerChannel == 2) {
                 val = (fileData[i] & 0xFF) | (fileData[i + 1]) << 8;
             } else if (bytesPerChannel == 1) {
@@ -373,9 +680,13 @@ public class WavFile extends AudioFile {
     }
 
     /**
-     * @return - the duration of the encapsulated .wav file in seconds
+     * @return - the duration of the encapsulated .wav file in seconds, or
+     *         Integer.MAX_VALUE if the audio is read from a stream
      */
     public int getDurationInSeconds() {
+        if (isStream) {
+            return Integer.MAX_VALUE;
+        }
         return (int) (noOfDataBytes / averageBps);
     }
 
@@ -1,3 +1,6 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -12,12 +15,58 @@ import java.util.List;
  *  -d <pathname> -d <pathname> <mode%optional>
  *  -f <pathname> -d <pathname> <mode%optional>
  *  -d <pathname> -f <pathname> <mode%optional>
+ *  -s <pathname> -f|-d|-c <pathname> <mode%optional>
  * </pre>
  * 
  * where <pathname> is a path name and <mode%optional> is an optional argument
  * that takes a value -fast; other values are ignored by the program. If
  * specified, the program executes a code path that provides faster but
- * potentially less accurate results.
+ * potentially less accurate results. The mode may also be -lowrate, in which
+ * case the audio is analyzed at a quarter of its sampling rate with a
+ * smaller FFT, which is considerably faster with comparable results.
+ * 
+ * The following optional arguments may also be given after the mode
+ * 
+ * <pre>
+ *  -shards <n>  partitions the fingerprints of the files given by the second
+ *               <pathname> across n worker processes on the local machine;
+ *               cannot be used with -ber or -probe
+ *  -ber         scores the alignments found through hash collisions by the
+ *               bit error rate between the sub-fingerprints of the frames
+ *  -probe       also looks up the hashes of the first file with their least
+ *               reliable bits flipped, which recovers short matches of
+ *               audio resampled from another rate
+ *  -silence <r> skips the hashing of the analysis frames whose RMS
+ *               amplitude, in 16 bit sample units, is below r
+ *  -hash <type> computes the fingerprints with the given strategy, bark (the
+ *               default), maxpeak or landmark (pairs of spectral peaks)
+ *  -stoplist <p> ignores the hashes that occur in more than p percent of
+ *               the files loaded when matching
+ *  -save <file> saves the fingerprints of the files given by the second
+ *               <pathname> to a catalog that can be given with "-c"
+ *  -top <k>     ranks the files given by the second <pathname> by how well
+ *               they match every file given by the first, and prints the k
+ *               best of them as "TOP <file> <rank> <reference> <offset>
+ *               <offset> <score>" instead of the matches
+ *  -threads <n> analyzes the files and compares the pairs of files on n
+ *               threads, by default as many as there are processors; the
+ *               output is the same
+ *  -offheap     holds the fingerprints of the files analyzed outside of the
+ *               Java heap, keeping the heap small for large sets of files
+ *  -cache <file> keeps the result of every comparison of two files in the
+ *               given file, from which the comparisons of the same pair in
+ *               either order, or in the same order with -probe or -ber,
+ *               are served by later executions; not used with -stoplist,
+ *               whose results depend on all the files loaded
+ *  -budget <mb> keeps the fingerprints of the files analyzed within mb
+ *               megabytes of the heap, spilling the least recently used
+ *               ones to a temporary file; not used with -offheap
+ *  -pipeline    analyzes the files given by the second <pathname> one
+ *               after the other, printing the matches of each as soon as it
+ *               is analyzed and then dropping it, grouped by the file of
+ *               the second <pathname>; not used with "-c", -save or
+ *               -stoplist, which need all the files of both <pathname>
+ * </pre>
  * 
  * If a <pathname> is preceded by "-f", then the <pathname> must end in must
  * name a file that already exists on the file system. If a <pathname> is
@@ -25,6 +74,16 @@ import java.util.List;
  * system and contains nothing but files whose pathnames would be legal
  * following a "-f" option.
  * 
+ * If a <pathname> is preceded by "-s", it names a stream of audio that is
+ * matched with the files given by the second <pathname> while it is being
+ * read, "-" for the standard input or a file such as a named pipe otherwise.
+ * The stream is either in the WAVE format or consists of raw 16-bit little
+ * endian mono samples at 44.1 kHz, and a match is reported as soon as it is
+ * found. A stream cannot be matched with the "-ber" or "-probe" option.
+ * 
+ * If a <pathname> is preceded by "-c", it must name a catalog of fingerprints
+ * written by an earlier execution with the "-save" option in the same mode.
+ * 
  * If a <pathname> preceded by the "-f" option ends in ".wav", that file must
  * be in little-endian (RIFF) WAVE format with PCM encoding (AudioFormat 1),
  * stereo or mono, 8- or 16-bit samples, with a sampling rate of 11.025, 22.05,
@@ -37,6 +96,12 @@ import java.util.List;
  * 1.4.0 of the oggdec program will decode into a supported WAVE format without
  * the use of any command-line options.
  * 
+ * A file given by both <pathname>, or twice, including a copy of a file under
+ * another name, is decoded and analyzed once only. Two such files are
+ * reported as a match from the start of both without their audio being
+ * compared, unless -silence, -stoplist or -save is given, and a file matched
+ * with copies of itself only is not decoded at all if it is a WAVE file.
+ * 
  * @author: Magesh Ramachandran
  * @author: Mayank Narashiman
  * @author: Narendran K.P
@@ -47,13 +112,48 @@ public class dam {
     private static String INVALID_COMMAND_ERROR =
             "ERROR: Invalid command line";
     private static String MATCH = "MATCH %s %s %.1f %.1f";
+    private static String TOP = "TOP %s %d %s %.1f %.1f %d";
     private static String UNEXPECTED_ERROR =
             "ERROR: An unexpected error has occured";
+    private static String UNSUPPORTED_OPTION_ERROR =
+            "ERROR: %s cannot be used with %s";
 
     private static String userName;
 
     private static boolean errorOccured;
 
+    // number of worker processes across which the fingerprint index is
+    // partitioned, 0 if the index is not partitioned
+    private static int shardCount;
+
+    // file name of the catalog to which the fingerprints of the files given
+    // by the second path name are saved, null if they are not saved
+    private static String catalogToSave;
+
+    // counts the document frequencies of the hashes of the fingerprints
+    // loaded, null if no hash is stopped
+    private static HashStopList stopList;
+
+    // file name of the cache of the results of the comparisons, null if the
+    // results are not cached
+    private static String cacheFile;
+
+    // store spilling the fingerprints to disk beyond a budget of memory, null
+    // if the fingerprints are all held in memory
+    private static FingerprintSpillStore spillStore;
+
+    // true if the files given by the second path name are analyzed and
+    // compared one after the other
+    private static boolean pipeline;
+
+    // number of best matching references printed for every query file, 0 if
+    // the matches are printed instead
+    private static int topK;
+
+    // number of threads on which the pairs of files are compared
+    private static int threadCount =
+            Runtime.getRuntime().availableProcessors();
+
     /**
      * To check if an error has occurred so far
      * @return - true if an error has occurred, false otherwise
@@ -95,41 +195,101 @@ public class dam {
                 throw new RuntimeException(
                         "ERROR: the user name cannot be null");
             }
-            // sets the optional execution mode
-            if (args.length == 6 && "-fast".equals(args[5])) {
-                ComparableAudioFiles.setMode(ComparableAudioFiles.MODES.FAST);
+            // sets the optional execution mode and options
+            parseOptionalArguments(args);
+
+            if ("-s".equals(args[0])) {
+                matchStream(args);
+                if (isErrorOccured()) {
+                    System.exit(1);
+                }
+                return;
             }
 
-            // creates a list of ComparableAudioFile instances for all the
-            // file(s)
-            // represented by or belonging to a folder given by arg[1]
-            comparableAudioFileList1 =
-                    ComparableAudioFiles
-                            .makeListOfComparableAudioFile(AudioFiles
-                                 .makeAudioFilesFromArg(args[0], args[1], 1));
-            // creates a list of ComparableAudioFile instances for all the
-            // file(s)
-            // represented by or belonging to a folder given by arg[3]
-            comparableAudioFileList2 =
-                    ComparableAudioFiles
-                            .makeListOfComparableAudioFile(AudioFiles
-                                 .makeAudioFilesFromArg(args[2], args[3], 2));
+            if (topK > 0) {
+                rankUsingReferenceIndex(args);
+                if (isErrorOccured()) {
+                    System.exit(1);
+                }
+                return;
+            }
+
+            if (shardCount > 0) {
+                compareUsingShardedIndex(args);
+                if (isErrorOccured()) {
+                    System.exit(1);
+                }
+                return;
+            }
+
+            if (pipeline && !"-c".equals(args[2]) && catalogToSave == null
+                    && stopList == null) {
+                compareUsingPipeline(args);
+                if (isErrorOccured()) {
+                    System.exit(1);
+                }
+                return;
+            }
+
+            if ("-c".equals(args[0]) || "-c".equals(args[2])) {
+                // creates a list of ComparableAudioFile instances for all the
+                // file(s)
+                // represented by or belonging to a folder given by arg[1]
+                comparableAudioFileList1 =
+                        makeListOfComparableAudioFile(args[0], args[1], 1);
+                // creates a list of ComparableAudioFile instances for all the
+                // file(s)
+                // represented by or belonging to a folder given by arg[3]
+                comparableAudioFileList2 =
+                        makeListOfComparableAudioFile(args[2], args[3], 2);
+            } else {
+                // the fingerprints of every file are needed to count the
+                // hashes or to be saved, even those only matched to copies
+                if (stopList != null || catalogToSave != null) {
+                    ComparableAudioFiles.setIdenticalFilesMatched(false);
+                }
+                // creates the lists of ComparableAudioFile instances for all
+                // the file(s) represented by or belonging to a folder given by
+                // arg[1] and arg[3], analyzing a file given by both, or
+                // twice, once only
+                InputResolver inputs =
+                        new InputResolver(args[0], args[1], args[2], args[3]);
+                inputs.analyze();
+                comparableAudioFileList1 =
+                        inputs.makeListOfComparableAudioFile(1);
+                comparableAudioFileList2 =
+                        inputs.makeListOfComparableAudioFile(2);
+            }
+            countForStopList(comparableAudioFileList1);
+            countForStopList(comparableAudioFileList2);
+
+            // stores the fingerprints of the file(s) given by arg[3] for
+            // later use
+            if (catalogToSave != null) {
+                FingerprintCatalog.write(catalogToSave,
+                        comparableAudioFileList2,
+                        ComparableAudioFiles.getMode());
+            }
+
+            // the results of the comparisons depend on all the files loaded
+            // when hashes are stopped, and cannot be reused
+            MatchResultCache cache =
+                    cacheFile != null && stopList == null ? MatchResultCache
+                            .open(cacheFile) : null;
 
             // compares each ComparableAudioFile corresponding to arg[1] to
             // every ComparableAudioFile corresponding to arg[3] for check for
             // a matching sequence of audio. If there is a match, prints 
             // "MATCH" along with the time in seconds at which the match has
-            //  occurred
-            for (ComparableAudioFile aS1 : comparableAudioFileList1) {
-                for (ComparableAudioFile aS2 : comparableAudioFileList2) {
-                    double[] matchPosition =
-                            aS1.getMatchPositionInSeconds(aS2);
-                    if (matchPosition != null) {
-                        System.out.println(String.format(MATCH,
-                                aS1.getFileName(), aS2.getFileName(),
-                                matchPosition[0], matchPosition[1]));
-                    }
-                }
+            //  occurred, in the order of a nested loop over the two lists
+            new ParallelPairMatcher(comparableAudioFileList1,
+                    comparableAudioFileList2, cache, MATCH, System.out,
+                    threadCount).run();
+            if (cache != null) {
+                cache.close();
+            }
+            if (spillStore != null) {
+                spillStore.close();
             }
             if (isErrorOccured()) {
                 System.exit(1);
@@ -147,6 +307,312 @@ public class dam {
         }
     }
 
+    /**
+     * Makes a list of {@ComparableAudioFile} for the file(s) given by the
+     * flag and path name, which may be a file, a directory or a catalog of
+     * fingerprints
+     * 
+     * @param flag - '-f' -> file, '-d' -> directory, '-c' -> catalog
+     * @param fpath - path name
+     * @param paramNum - the sub-folder of the temporary path to which the
+     *            temporary file(s) if any must be written to
+     * @return - list of {@ComparableAudioFile}
+     * @throws Exception
+     */
+    private static List<ComparableAudioFile> makeListOfComparableAudioFile(
+            String flag,
+            String fpath,
+            int paramNum) throws Exception {
+        if ("-c".equals(flag)) {
+            return FingerprintCatalog.open(fpath)
+                    .makeListOfComparableAudioFile(
+                            ComparableAudioFiles.getMode());
+        }
+        return ComparableAudioFiles.makeListOfComparableAudioFile(AudioFiles
+                .makeAudioFilesFromArg(flag, fpath, paramNum));
+    }
+
+    /**
+     * Parses the optional arguments that follow the user name. Values that are
+     * not recognized are ignored by the program
+     * 
+     * @param args - an array of command line arguments
+     */
+    private static void parseOptionalArguments(String[] args) {
+        for (int i = 5; i < args.length; i++) {
+            if ("-fast".equals(args[i])) {
+                ComparableAudioFiles.setMode(ComparableAudioFiles.MODES.FAST);
+            } else if ("-lowrate".equals(args[i])) {
+                ComparableAudioFiles
+                        .setMode(ComparableAudioFiles.MODES.LOWRATE);
+            } else if ("-shards".equals(args[i]) && i + 1 < args.length) {
+                shardCount = parsePositiveInt(args[++i]);
+            } else if ("-ber".equals(args[i])) {
+                ComparableAudioFile.setBitErrorRateMatch(true);
+            } else if ("-probe".equals(args[i])) {
+                ComparableAudioFile.setMultiProbe(true);
+            } else if ("-silence".equals(args[i]) && i + 1 < args.length) {
+                ComparableAudioFile.setSilenceThreshold(
+                        parsePositiveInt(args[++i]));
+                // a copy of a silent file must not match, which is only known
+                // once it is analyzed
+                ComparableAudioFiles.setIdenticalFilesMatched(false);
+            } else if ("-hash".equals(args[i]) && i + 1 < args.length) {
+                SubFingerprintHashers.setType(parseHasherType(args[++i]));
+            } else if ("-stoplist".equals(args[i]) && i + 1 < args.length) {
+                stopList =
+                        new HashStopList(parsePositiveInt(args[++i]) / 100.0);
+                ComparableAudioFile.setStopList(stopList);
+            } else if ("-save".equals(args[i]) && i + 1 < args.length) {
+                catalogToSave = args[++i];
+            } else if ("-top".equals(args[i]) && i + 1 < args.length) {
+                topK = parsePositiveInt(args[++i]);
+            } else if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                threadCount = parsePositiveInt(args[++i]);
+                ComparableAudioFiles.setThreadCount(threadCount);
+            } else if ("-offheap".equals(args[i])) {
+                ComparableAudioFiles
+                        .setOffHeapIndex(new OffHeapFingerprintIndex());
+            } else if ("-cache".equals(args[i]) && i + 1 < args.length) {
+                cacheFile = args[++i];
+            } else if ("-budget".equals(args[i]) && i + 1 < args.length) {
+                long budget = parsePositiveInt(args[++i]) * (1L << 20);
+                try {
+                    spillStore = new FingerprintSpillStore(budget);
+                } catch (IOException e) {
+                    throw new RuntimeException(
+                            "ERROR: The spill file could not be created");
+                }
+                ComparableAudioFiles.setSpillStore(spillStore);
+            } else if ("-pipeline".equals(args[i])) {
+                pipeline = true;
+            }
+        }
+        // the shards hold the postings of the files only, not the
+        // sub-fingerprints and least reliable bits needed by these options
+        if (shardCount > 0) {
+            rejectOption(ComparableAudioFile.isBitErrorRateMatch(), "-ber",
+                    "-shards");
+            rejectOption(ComparableAudioFile.isMultiProbe(), "-probe",
+                    "-shards");
+        }
+        // a stream is matched by the times of its hash collisions only, the
+        // sub-fingerprints and least reliable bits of its frames are not kept
+        if ("-s".equals(args[0])) {
+            rejectOption(ComparableAudioFile.isBitErrorRateMatch(), "-ber",
+                    "-s");
+            rejectOption(ComparableAudioFile.isMultiProbe(), "-probe", "-s");
+        }
+    }
+
+    /**
+     * Raises an error if an option that cannot be used with another one is
+     * given along with it
+     * 
+     * @param given - true if the option is given
+     * @param option - the option
+     * @param other - the option it cannot be used with
+     */
+    private static void rejectOption(
+            boolean given,
+            String option,
+            String other) {
+        if (given) {
+            throw new RuntimeException(String.format(
+                    UNSUPPORTED_OPTION_ERROR, option, other));
+        }
+    }
+
+    /**
+     * Parses the value of an optional argument that must be a positive number
+     * 
+     * @param value - the value given on the command line
+     * @return - the parsed value
+     */
+    private static int parsePositiveInt(String value) {
+        try {
+            int v = Integer.parseInt(value);
+            if (v > 0) {
+                return v;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new RuntimeException(INVALID_COMMAND_ERROR);
+    }
+
+    /**
+     * Parses the name of a sub-fingerprint strategy given on the command line
+     * 
+     * @param value - the value given on the command line
+     * @return - the {@SubFingerprintHashers.TYPES} named by the value
+     */
+    private static SubFingerprintHashers.TYPES parseHasherType(String value) {
+        for (SubFingerprintHashers.TYPES t : SubFingerprintHashers.TYPES
+                .values()) {
+            if (t.name().equalsIgnoreCase(value)) {
+                return t;
+            }
+        }
+        throw new RuntimeException(INVALID_COMMAND_ERROR);
+    }
+
+    /**
+     * Compares the files given by arg[1] with the files given by arg[3], by
+     * analyzing the former and then analyzing and comparing the latter one
+     * after the other with a {@PipelinedPairMatcher}
+     * 
+     * @param args - an array of command line arguments
+     * @throws Exception
+     */
+    private static void compareUsingPipeline(String[] args) throws Exception {
+        List<ComparableAudioFile> files1 =
+                makeListOfComparableAudioFile(args[0], args[1], 1);
+        // the files given by arg[3] are dropped once compared, so their
+        // fingerprints are not moved where they would be kept
+        ComparableAudioFiles.setOffHeapIndex(null);
+        ComparableAudioFiles.setSpillStore(null);
+        MatchResultCache cache =
+                cacheFile != null ? MatchResultCache.open(cacheFile) : null;
+        new PipelinedPairMatcher(files1, args[2], args[3], cache, MATCH,
+                System.out, threadCount).run();
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    /**
+     * Matches the stream of audio given by arg[1], the standard input if it
+     * is "-" or a file such as a named pipe otherwise, with the files given by
+     * arg[3] while the stream is being read, till the end of the stream
+     * 
+     * @param args - an array of command line arguments
+     * @throws Exception
+     */
+    private static void matchStream(String[] args) throws Exception {
+        List<ComparableAudioFile> references =
+                makeListOfComparableAudioFile(args[2], args[3], 2);
+        countForStopList(references);
+        AudioFile stream;
+        if ("-".equals(args[1])) {
+            stream = new WavFile(System.in, "stdin");
+        } else {
+            File f = new File(args[1]);
+            if (!f.exists()) {
+                throw new RuntimeException(String.format(
+                        AudioFile.INVALID_FILE_PATH, args[1]));
+            }
+            stream = new WavFile(new FileInputStream(f), f.getName());
+        }
+        new StreamMatcher(stream, references, System.out).run();
+    }
+
+    /**
+     * Compares the files given by arg[1] with the files given by arg[3] using
+     * a {@ShardedFingerprintIndex} whose hash space is partitioned across
+     * worker processes. The fingerprints of the files given by arg[3] are
+     * added to the index one at a time, so that only the shards hold them,
+     * and the files given by arg[1] are matched against the index. The
+     * output is the same as, and in the same order as, the one produced by
+     * comparing every pair of files
+     * 
+     * @param args - an array of command line arguments
+     * @throws Exception
+     */
+    private static void compareUsingShardedIndex(String[] args)
+            throws Exception {
+        List<ComparableAudioFile> queries =
+                makeListOfComparableAudioFile(args[0], args[1], 1);
+        countForStopList(queries);
+        ShardedFingerprintIndex index = new ShardedFingerprintIndex(shardCount);
+        try {
+            if ("-c".equals(args[2])) {
+                for (ComparableAudioFile ref : makeListOfComparableAudioFile(
+                        args[2], args[3], 2)) {
+                    countForStopList(ref);
+                    index.add(ref);
+                }
+            } else {
+                for (AudioFile af : AudioFiles.makeAudioFilesFromArg(args[2],
+                        args[3], 2)) {
+                    ComparableAudioFile ref =
+                            ComparableAudioFiles.makeComparableAudioFile(af);
+                    if (ref != null) {
+                        countForStopList(ref);
+                        index.add(ref);
+                    }
+                }
+            }
+            for (ComparableAudioFile aS1 : queries) {
+                double[][] matchPositions =
+                        index.getMatchPositionsInSeconds(aS1);
+                for (int r = 0; r < matchPositions.length; r++) {
+                    if (matchPositions[r] != null) {
+                        System.out.println(String.format(MATCH,
+                                aS1.getFileName(), index.getFileName(r),
+                                matchPositions[r][0], matchPositions[r][1]));
+                    }
+                }
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Ranks the files given by arg[3] against every file given by arg[1]
+     * using a {@ReferenceIndex} of the files given by arg[3], and prints the
+     * best matching of them for every file given by arg[1]
+     * 
+     * @param args - an array of command line arguments
+     * @throws Exception
+     */
+    private static void rankUsingReferenceIndex(String[] args)
+            throws Exception {
+        List<ComparableAudioFile> queries =
+                makeListOfComparableAudioFile(args[0], args[1], 1);
+        List<ComparableAudioFile> references =
+                makeListOfComparableAudioFile(args[2], args[3], 2);
+        countForStopList(queries);
+        countForStopList(references);
+        ReferenceIndex index = new ReferenceIndex();
+        for (ComparableAudioFile ref : references) {
+            index.add(ref);
+        }
+        for (ComparableAudioFile aS1 : queries) {
+            int rank = 0;
+            for (ReferenceIndex.RankedMatch m : index.query(aS1, topK)) {
+                System.out.println(String.format(TOP, aS1.getFileName(),
+                        ++rank, m.getFileName(), m.getQueryOffset(),
+                        m.getReferenceOffset(), m.getScore()));
+            }
+        }
+    }
+
+    /**
+     * Counts the hashes of the given files towards the document frequencies
+     * of the stop list, if hashes are to be stopped
+     * 
+     * @param files - list of {@ComparableAudioFile} loaded for matching
+     */
+    private static void countForStopList(List<ComparableAudioFile> files) {
+        for (ComparableAudioFile file : files) {
+            countForStopList(file);
+        }
+    }
+
+    /**
+     * Counts the hashes of the given file towards the document frequencies
+     * of the stop list, if hashes are to be stopped
+     * 
+     * @param file - {@ComparableAudioFile} loaded for matching
+     */
+    private static void countForStopList(ComparableAudioFile file) {
+        if (stopList != null) {
+            stopList.count(file.getFingerprint());
+        }
+    }
+
     /**
      * Validates the command line arguments passed to the program
      * 
@@ -156,10 +622,18 @@ public class dam {
         if (args.length < 4) {
             throw new RuntimeException(INVALID_COMMAND_ERROR);
         }
-        if (!("-f".equals(args[0]) || "-d".equals(args[0]))
-                || !("-f".equals(args[2]) || "-d".equals(args[2]))) {
+        if (!(isSourceFlag(args[0]) || "-s".equals(args[0]))
+                || !isSourceFlag(args[2])) {
             throw new RuntimeException(INVALID_COMMAND_ERROR);
         }
     }
 
+    /**
+     * @param flag - a command line argument
+     * @return - true if the argument is a flag that precedes a path name
+     */
+    private static boolean isSourceFlag(String flag) {
+        return "-f".equals(flag) || "-d".equals(flag) || "-c".equals(flag);
+    }
+
 }